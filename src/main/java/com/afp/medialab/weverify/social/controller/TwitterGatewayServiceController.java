@@ -1,6 +1,7 @@
 package com.afp.medialab.weverify.social.controller;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.LinkedList;
 import java.util.List;
@@ -37,6 +38,8 @@ import com.afp.medialab.weverify.social.model.NotFoundException;
 import com.afp.medialab.weverify.social.model.Status;
 import com.afp.medialab.weverify.social.model.StatusRequest;
 import com.afp.medialab.weverify.social.model.StatusResponse;
+import com.afp.medialab.weverify.social.twint.SessionProgress;
+import com.afp.medialab.weverify.social.twint.SessionProgressRegistry;
 import com.afp.medialab.weverify.social.twint.TwintThreadGroup;
 import com.afp.medialab.weverify.social.util.RequestCacheManager;
 
@@ -58,6 +61,9 @@ public class TwitterGatewayServiceController {
 	@Autowired
 	private TwintThreadGroup ttg;
 
+	@Autowired
+	private SessionProgressRegistry progressRegistry;
+
 	@Value("${application.home.msg}")
 	private String homeMsg;
 
@@ -129,6 +135,15 @@ public class TwitterGatewayServiceController {
 	 * @func Returns the status response of a given session.
 	 */
 	private StatusResponse getStatusResponse(String session) {
+		// running sessions are answered from memory
+		SessionProgress progress = progressRegistry.get(session);
+		if (progress != null && progress.getStatus() == Status.Running) {
+			StatusResponse statusResponse = new StatusResponse(progress.getSession(), progress.getProcessStart(), null,
+					progress.getStatus(), progress.getQuery(), null, null);
+			statusResponse.setProgress(progress.toCollectProgress());
+			return statusResponse;
+		}
+
 		CollectHistory collectHistory = collectService.getCollectInfo(session);
 		if (collectHistory == null)
 			throw new NotFoundException();
@@ -244,11 +259,11 @@ public class TwitterGatewayServiceController {
 	 */
 	private void callTwint(CollectHistory collectHistory) {
 
-		List<Request> requests = collectHistory.getRequests();
-		for (Request request : requests) {
-			CollectRequest newCollectRequest = new CollectRequest(request);
-			ttg.callTwintMultiThreaded(collectHistory, newCollectRequest);
-		}
+		// one launch for the whole session
+		List<CollectRequest> collectRequests = new ArrayList<CollectRequest>();
+		for (Request request : collectHistory.getRequests())
+			collectRequests.add(new CollectRequest(request));
+		ttg.callTwintMultiThreaded(collectHistory, collectRequests);
 
 	}
 }
\ No newline at end of file
@@ -0,0 +1,146 @@
+package com.afp.medialab.weverify.social.dao.entity;
+
+import java.io.Serializable;
+import java.util.Date;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Table;
+
+import com.afp.medialab.weverify.social.model.Status;
+
+/**
+ * A time slice of a collect, saved as it is scraped so that an unfinished slice
+ * can be run again from where twint stopped after a restart.
+ *
+ * State is Pending while queued, Running while scraped, CountingWords once
+ * scraped and until its tweets are enriched, then Done or Error. Where twint
+ * stopped in a Running slice is not saved, it is read from Elasticsearch when
+ * the slice is resumed, see ResumeCheckpointService.
+ */
+@Entity
+@Table(name = "collectJob", indexes = { @Index(name = "collectJob_session", columnList = "session"),
+		@Index(name = "collectJob_state", columnList = "state") })
+public class CollectJob implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	@Id
+	@GeneratedValue
+	@Column(name = "id", nullable = false)
+	private Integer id;
+
+	@Column(name = "session")
+	private String session;
+
+	/**
+	 * CollectRequest of the slice in JSON, without its dates
+	 */
+	@Column(name = "query", length = 4096)
+	private String query;
+
+	@Column(name = "since")
+	private Date since;
+
+	@Column(name = "until")
+	private Date until;
+
+	@Column(name = "state")
+	private String state;
+
+	@Column(name = "attempts")
+	private Integer attempts = 0;
+
+	@Column(name = "count")
+	private Integer count = 0;
+
+	@Column(name = "updated")
+	private Date updated;
+
+	public CollectJob() {
+	}
+
+	public CollectJob(String session, String query, Date since, Date until) {
+		this.session = session;
+		this.query = query;
+		this.since = since;
+		this.until = until;
+		this.state = Status.Pending.toString();
+		this.updated = new Date();
+	}
+
+	public Integer getId() {
+		return id;
+	}
+
+	public void setId(Integer id) {
+		this.id = id;
+	}
+
+	public String getSession() {
+		return session;
+	}
+
+	public void setSession(String session) {
+		this.session = session;
+	}
+
+	public String getQuery() {
+		return query;
+	}
+
+	public void setQuery(String query) {
+		this.query = query;
+	}
+
+	public Date getSince() {
+		return since;
+	}
+
+	public void setSince(Date since) {
+		this.since = since;
+	}
+
+	public Date getUntil() {
+		return until;
+	}
+
+	public void setUntil(Date until) {
+		this.until = until;
+	}
+
+	public Status getState() {
+		return Status.valueOf(state);
+	}
+
+	public void setState(Status state) {
+		this.state = state.toString();
+	}
+
+	public Integer getAttempts() {
+		return attempts;
+	}
+
+	public void setAttempts(Integer attempts) {
+		this.attempts = attempts;
+	}
+
+	public Integer getCount() {
+		return count;
+	}
+
+	public void setCount(Integer count) {
+		this.count = count;
+	}
+
+	public Date getUpdated() {
+		return updated;
+	}
+
+	public void setUpdated(Date updated) {
+		this.updated = updated;
+	}
+}
@@ -11,14 +11,18 @@ import javax.persistence.Entity;
 import javax.persistence.FetchType;
 import javax.persistence.GeneratedValue;
 import javax.persistence.Id;
+import javax.persistence.Index;
 import javax.persistence.ManyToOne;
+import javax.persistence.PrePersist;
+import javax.persistence.PreUpdate;
 import javax.persistence.Table;
 
 import com.afp.medialab.weverify.social.model.CollectRequest;
+import com.afp.medialab.weverify.social.util.QuerySignature;
 import com.fasterxml.jackson.annotation.JsonBackReference;
 
 @Entity(name = "Request")
-@Table(name = "request")
+@Table(name = "request", indexes = @Index(name = "request_fingerprint", columnList = "fingerprint"))
 public class Request implements Serializable {
 	/**
 	 * 
@@ -66,6 +70,12 @@ public class Request implements Serializable {
 	@Column(name = "merge")
 	private Boolean merge = false;
 
+	/**
+	 * {@link QuerySignature#fingerprint(Request)} of the criteria
+	 */
+	@Column(name = "fingerprint", length = 32)
+	private String fingerprint;
+
 	public Request() {
 	}
 
@@ -84,6 +94,8 @@ public class Request implements Serializable {
 		this(collectRequest.getKeywordList(), collectRequest.getBannedWords(), collectRequest.getLang(),
 				collectRequest.getUserList(), collectRequest.getFrom(), collectRequest.getUntil(),
 				collectRequest.getMedia());
+		this.verified = collectRequest.isVerified();
+		this.retweetsHandling = collectRequest.getRetweetsHandling();
 	}
 
 	public void update(CollectRequest collectRequest) {
@@ -94,7 +106,8 @@ public class Request implements Serializable {
 		this.since = collectRequest.getFrom();
 		this.until = collectRequest.getUntil();
 		this.media = collectRequest.getMedia();
-
+		this.verified = collectRequest.isVerified();
+		this.retweetsHandling = collectRequest.getRetweetsHandling();
 	}
 
 	public Integer getId() {
@@ -185,6 +198,16 @@ public class Request implements Serializable {
 		this.collectHistory = collectHistory;
 	}
 
+	public String getFingerprint() {
+		return fingerprint;
+	}
+
+	@PrePersist
+	@PreUpdate
+	public void updateFingerprint() {
+		this.fingerprint = QuerySignature.fingerprint(this);
+	}
+
 	public Boolean getMerge() {
 		return merge;
 	}
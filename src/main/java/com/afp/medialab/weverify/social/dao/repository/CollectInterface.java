@@ -6,6 +6,7 @@ import java.util.List;
 import javax.transaction.Transactional;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 
@@ -57,6 +58,11 @@ public interface CollectInterface extends JpaRepository<CollectHistory, Integer>
     @Query("update CollectHistory collect set collect.count = :int where collect.session = :session")
     void updateCollectCount(@Param("session") String session, @Param("int") Integer count);
 
+    @Modifying
+    @Transactional
+    @Query("update CollectHistory collect set collect.count = coalesce(collect.count, 0) + :delta where collect.session = :session")
+    void incrementCollectCount(@Param("session") String session, @Param("delta") Integer delta);
+
     //@Modifying
     @Transactional
     @Query("update CollectHistory collect set collect.finished_threads = :int where collect.session = :session")
@@ -71,4 +77,19 @@ public interface CollectInterface extends JpaRepository<CollectHistory, Integer>
     @Transactional
     @Query("update CollectHistory collect set collect.successful_threads = :int where collect.session = :session")
     void updateCollectSuccessful_threads(@Param("session") String session, @Param("int") Integer successful_threads);
+
+    @Modifying
+    @Transactional
+    @Query("update CollectHistory collect set collect.total_threads = coalesce(collect.total_threads, 0) + :delta, collect.status = :status where collect.session = :session")
+    void incrementCollectTotal_threads(@Param("session") String session, @Param("delta") Integer delta, @Param("status") String status);
+
+    @Modifying
+    @Transactional
+    @Query("update CollectHistory collect set collect.finished_threads = coalesce(collect.finished_threads, 0) + 1, collect.successful_threads = coalesce(collect.successful_threads, 0) + :success, collect.count = coalesce(collect.count, 0) + :delta where collect.session = :session")
+    void incrementCollectFinished_threads(@Param("session") String session, @Param("success") Integer success, @Param("delta") Integer countDelta);
+
+    @Modifying
+    @Transactional
+    @Query("update CollectHistory collect set collect.status = :status, collect.processEnd = :processEnd, collect.message = :message where collect.session = :session")
+    void finishCollect(@Param("session") String session, @Param("status") String status, @Param("processEnd") Date processEnd, @Param("message") String message);
 }
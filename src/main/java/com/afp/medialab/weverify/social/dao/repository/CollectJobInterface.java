@@ -0,0 +1,40 @@
+package com.afp.medialab.weverify.social.dao.repository;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+
+import javax.transaction.Transactional;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import com.afp.medialab.weverify.social.dao.entity.CollectJob;
+
+public interface CollectJobInterface extends JpaRepository<CollectJob, Integer> {
+
+    List<CollectJob> findCollectJobByStateInOrderById(Collection<String> states);
+
+    @Modifying
+    @Transactional
+    @Query("update CollectJob job set job.state = :state, job.attempts = coalesce(job.attempts, 0) + 1, job.updated = :updated where job.id = :id")
+    void startCollectJob(@Param("id") Integer id, @Param("state") String state, @Param("updated") Date updated);
+
+    @Modifying
+    @Transactional
+    @Query("update CollectJob job set job.state = :state, job.since = :since, job.count = :count, job.updated = :updated where job.id = :id")
+    void updateCollectJob(@Param("id") Integer id, @Param("state") String state, @Param("since") Date since,
+            @Param("count") Integer count, @Param("updated") Date updated);
+
+    @Modifying
+    @Transactional
+    @Query("update CollectJob job set job.state = :state, job.updated = :updated where job.id = :id")
+    void updateCollectJobState(@Param("id") Integer id, @Param("state") String state, @Param("updated") Date updated);
+
+    @Modifying
+    @Transactional
+    @Query("delete from CollectJob job where job.state in :states and job.updated < :before")
+    int deleteCollectJobs(@Param("states") Collection<String> states, @Param("before") Date before);
+}
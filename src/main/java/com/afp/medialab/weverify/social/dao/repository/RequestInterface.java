@@ -55,4 +55,16 @@ public interface RequestInterface extends JpaRepository<Request, Integer> {
     @Query("select r from Request r where :my_keyword member of r.userList")
     List<Request> my_findSmallerRequestByUsers(@Param("my_keyword") String user);
     
+    /**
+     * Requests not merged and not failed, with their collect
+     */
+    @Query("select distinct r from Request r join fetch r.collectHistory c where r.merge = false and (c.status is null or c.status <> :status)")
+    List<Request> findCollectedRequests(@Param("status") String errorStatus);
+
+    /**
+     * Requests not merged and not failed made with exactly the same criteria
+     */
+    @Query("select distinct r from Request r join fetch r.collectHistory c where r.fingerprint = :fingerprint and r.merge = false and (c.status is null or c.status <> :status)")
+    List<Request> findCollectedRequestsByFingerprint(@Param("fingerprint") String fingerprint, @Param("status") String errorStatus);
+
 }
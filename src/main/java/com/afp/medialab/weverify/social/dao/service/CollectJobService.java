@@ -0,0 +1,167 @@
+package com.afp.medialab.weverify.social.dao.service;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.afp.medialab.weverify.social.dao.entity.CollectJob;
+import com.afp.medialab.weverify.social.dao.repository.CollectJobInterface;
+import com.afp.medialab.weverify.social.model.CollectRequest;
+import com.afp.medialab.weverify.social.model.Status;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+/**
+ * Durable records of the time slices of the collects, see {@link CollectJob}
+ * 
+ * @author Medialab
+ */
+@Service
+public class CollectJobService {
+
+	private static Logger Logger = LoggerFactory.getLogger(CollectJobService.class);
+
+	/**
+	 * Derived properties such as valid are written but not read back
+	 */
+	private static final ObjectMapper mapper = new ObjectMapper()
+			.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+	private static final ObjectWriter collectRequestWriter = mapper.writerFor(CollectRequest.class);
+	private static final ObjectReader collectRequestReader = mapper.readerFor(CollectRequest.class);
+
+	@Autowired
+	private CollectJobInterface collectJobInterface;
+
+	@Value("${application.twintcall.twint_job_retention_days:7}")
+	private Integer retentionDays;
+
+	/**
+	 * Save a new slice to collect
+	 * 
+	 * @param session
+	 * @param collectRequest
+	 * @return job id, null if the job could not be saved
+	 */
+	public Integer createJob(String session, CollectRequest collectRequest) {
+		try {
+			// a slice without time range has no dates
+			boolean timeRange = !collectRequest.isDisableTimeRange();
+			CollectJob job = new CollectJob(session, collectRequestWriter.writeValueAsString(collectRequest),
+					timeRange ? collectRequest.getFrom() : null, timeRange ? collectRequest.getUntil() : null);
+			return collectJobInterface.save(job).getId();
+		} catch (JsonProcessingException | RuntimeException e) {
+			Logger.error("Unable to save a slice of session {}: {}", session, e.getMessage());
+			return null;
+		}
+	}
+
+	/**
+	 * twint starts scraping the slice
+	 * 
+	 * @param id
+	 */
+	public void jobStarted(Integer id) {
+		if (id == null)
+			return;
+		try {
+			collectJobInterface.startCollectJob(id, Status.Running.toString(), new Date());
+		} catch (RuntimeException e) {
+			Logger.error("Unable to save the start of slice {}: {}", id, e.getMessage());
+		}
+	}
+
+	/**
+	 * twint is done with the slice, its start moves if the rest of the range was
+	 * left to another split
+	 * 
+	 * @param id
+	 * @param collectRequest scraped range
+	 * @param successful
+	 * @param count          number of tweets collected
+	 */
+	public void jobScraped(Integer id, CollectRequest collectRequest, boolean successful, int count) {
+		if (id == null)
+			return;
+		Status state = successful ? Status.CountingWords : Status.Error;
+		Date since = collectRequest.isDisableTimeRange() ? null : collectRequest.getFrom();
+		try {
+			collectJobInterface.updateCollectJob(id, state.toString(), since, Math.max(0, count), new Date());
+		} catch (RuntimeException e) {
+			Logger.error("Unable to save scraped slice {}: {}", id, e.getMessage());
+		}
+	}
+
+	/**
+	 * Tweets of the slice are enriched
+	 * 
+	 * @param id
+	 */
+	public void jobEnriched(Integer id) {
+		updateState(id, Status.Done);
+	}
+
+	public void jobFailed(Integer id) {
+		updateState(id, Status.Error);
+	}
+
+	private void updateState(Integer id, Status state) {
+		if (id == null)
+			return;
+		try {
+			collectJobInterface.updateCollectJobState(id, state.toString(), new Date());
+		} catch (RuntimeException e) {
+			Logger.error("Unable to save state {} of slice {}: {}", state, id, e.getMessage());
+		}
+	}
+
+	/**
+	 * Delete the Done and Error slices older than the retention, they are not
+	 * resumed
+	 */
+	public void purgeFinishedJobs() {
+		Date before = new Date(System.currentTimeMillis() - retentionDays * 86400000L);
+		try {
+			int nbJobs = collectJobInterface.deleteCollectJobs(
+					Arrays.asList(Status.Done.toString(), Status.Error.toString()), before);
+			if (nbJobs > 0)
+				Logger.info("{} finished slices deleted", nbJobs);
+		} catch (RuntimeException e) {
+			Logger.error("Unable to delete finished slices: {}", e.getMessage());
+		}
+	}
+
+	/**
+	 * @return slices left unfinished by the previous run, in creation order
+	 */
+	public List<CollectJob> unfinishedJobs() {
+		return collectJobInterface.findCollectJobByStateInOrderById(Arrays.asList(Status.Pending.toString(),
+				Status.Running.toString(), Status.CountingWords.toString()));
+	}
+
+	/**
+	 * @param job
+	 * @return slice of the job, null if it cannot be read
+	 */
+	public CollectRequest toCollectRequest(CollectJob job) {
+		try {
+			CollectRequest collectRequest = collectRequestReader.readValue(job.getQuery());
+			collectRequest.setDisableTimeRange(job.getSince() == null);
+			collectRequest.setFrom(job.getSince());
+			collectRequest.setUntil(job.getUntil());
+			return collectRequest;
+		} catch (IOException e) {
+			Logger.error("Unable to read slice {}: {}", job.getId(), e.getMessage());
+			return null;
+		}
+	}
+}
@@ -4,8 +4,10 @@ import java.io.IOException;
 import java.util.Calendar;
 import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
 import java.util.stream.Collectors;
@@ -14,6 +16,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import com.afp.medialab.weverify.social.dao.entity.CollectHistory;
 import com.afp.medialab.weverify.social.dao.entity.Request;
@@ -21,24 +24,30 @@ import com.afp.medialab.weverify.social.dao.repository.CollectInterface;
 import com.afp.medialab.weverify.social.dao.repository.RequestInterface;
 import com.afp.medialab.weverify.social.model.CollectRequest;
 import com.afp.medialab.weverify.social.model.Status;
+import com.afp.medialab.weverify.social.util.RequestCoverageIndex;
 import com.fasterxml.jackson.core.JsonParseException;
 import com.fasterxml.jackson.databind.JsonMappingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
 
 @Service
 public class CollectService {
 
 	private static Logger Logger = LoggerFactory.getLogger(CollectService.class);
+
+	private static final ObjectReader collectRequestReader = new ObjectMapper().readerFor(CollectRequest.class);
 	@Autowired
 	private CollectInterface collectInterface;
 
 	@Autowired
 	private RequestInterface requestInterface;
 
+	@Autowired
+	private RequestCoverageIndex coverageIndex;
+
 	public CollectRequest stringToCollectRequest(String query) {
-		ObjectMapper mapper = new ObjectMapper();
 		try {
-			CollectRequest collectRequest = mapper.readValue(query, CollectRequest.class);
+			CollectRequest collectRequest = collectRequestReader.readValue(query);
 			return collectRequest;
 		} catch (JsonParseException e) {
 			e.printStackTrace();
@@ -79,6 +88,7 @@ public class CollectService {
 		} else if (newStatus == Status.Error && existingStatus != Status.Error) {
 			collectInterface.updateCollectProcessEnd(session, new Date());
 			collectInterface.updateCollectStatus(session, newStatus.toString());
+			coverageIndex.removeSession(session);
 			return true;
 		}
 		return false;
@@ -162,6 +172,16 @@ public class CollectService {
 		collectInterface.updateCollectCount(session, count);
 	}
 
+	/**
+	 * Add tweets to the collect count while the collect is running
+	 * 
+	 * @param session
+	 * @param nbNewTweets
+	 */
+	public void addCollectCount(String session, Integer nbNewTweets) {
+		collectInterface.incrementCollectCount(session, nbNewTweets);
+	}
+
 	public void updateCollectFinishedThreads(String session, Integer finished_threads) {
 		collectInterface.updateCollectFinished_threads(session, finished_threads);
 	}
@@ -174,6 +194,40 @@ public class CollectService {
 		collectInterface.updateCollectSuccessful_threads(session, sucessful_threads);
 	}
 
+	/**
+	 * Add threads to a collect and mark it as running, in a single update
+	 * 
+	 * @param session
+	 * @param nbThreads
+	 */
+	public void addCollectThreads(String session, Integer nbThreads) {
+		collectInterface.incrementCollectTotal_threads(session, nbThreads, Status.Running.toString());
+	}
+
+	/**
+	 * Count a finished thread of a collect, in a single update
+	 * 
+	 * @param session
+	 * @param successful  true if the thread collected its time range
+	 * @param nbNewTweets tweets not yet added to the collect count
+	 */
+	public void collectThreadFinished(String session, boolean successful, Integer nbNewTweets) {
+		collectInterface.incrementCollectFinished_threads(session, successful ? 1 : 0, nbNewTweets);
+	}
+
+	/**
+	 * Save the final status of a collect
+	 * 
+	 * @param session
+	 * @param status
+	 * @param message
+	 */
+	public void finishCollect(String session, Status status, String message) {
+		collectInterface.finishCollect(session, status.toString(), new Date(), message);
+		if (status == Status.Error)
+			coverageIndex.removeSession(session);
+	}
+
 	/**
 	 * @param keywords
 	 * @return Set<Request> or null if the given list is empty or null
@@ -238,11 +292,13 @@ public class CollectService {
 	}
 
 	public void save_collectHistory(CollectHistory collectHistory) {
-		collectInterface.saveAndFlush(collectHistory);
+		coverageIndex.add(collectInterface.saveAndFlush(collectHistory));
 	}
 
 	public void save_request(Request request) {
 		requestInterface.save(request);
+		if (request.getMerge())
+			coverageIndex.remove(request);
 	}
 
 	public Set<Request> requestsContainingAllTheKeywords(Set<String> keywordList, String language) {
@@ -304,6 +360,37 @@ public class CollectService {
 		return requestInterface.findByUserListInAndMergeIsFalse(userList);
 	}
 
+	/**
+	 * Average tweet rate of the finished collects made with the same keywords
+	 * 
+	 * @param collectRequest
+	 * @return tweets per millisecond or null if there is no history
+	 */
+	@Transactional(readOnly = true)
+	public Double historicTweetRate(CollectRequest collectRequest) {
+		Set<String> keywords = collectRequest.getKeywordList();
+		if (keywords == null || keywords.isEmpty())
+			return null;
+		Map<Integer, Long> durations = new HashMap<Integer, Long>();
+		Map<Integer, Integer> counts = new HashMap<Integer, Integer>();
+		for (Request request : requestInterface.findByKeywordListInAndMergeIsFalse(keywords)) {
+			CollectHistory collectHistory = request.getCollectHistory();
+			if (!keywords.equals(request.getKeywordList()) || request.getSince() == null
+					|| request.getUntil() == null || collectHistory == null
+					|| collectHistory.getStatus() != Status.Done || collectHistory.getCount() == null
+					|| collectHistory.getCount() <= 0)
+				continue;
+			durations.merge(collectHistory.getId(), request.getUntil().getTime() - request.getSince().getTime(),
+					Long::sum);
+			counts.put(collectHistory.getId(), collectHistory.getCount());
+		}
+		long nbTweets = counts.values().stream().mapToLong(Integer::longValue).sum();
+		long duration = durations.values().stream().mapToLong(Long::longValue).sum();
+		if (duration <= 0)
+			return null;
+		return (double) nbTweets / duration;
+	}
+
 	/**
 	 * Create a new collecthistory
 	 * 
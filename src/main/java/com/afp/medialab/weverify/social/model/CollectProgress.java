@@ -0,0 +1,62 @@
+package com.afp.medialab.weverify.social.model;
+
+/**
+ * Live progress of a running collect
+ */
+public class CollectProgress {
+
+	private long tweetsScraped;
+	private long tweetsEnriched;
+	private long bytesRead;
+	private long subRangesDone;
+	private long subRangesTotal;
+
+	public CollectProgress(long tweetsScraped, long tweetsEnriched, long bytesRead, long subRangesDone,
+			long subRangesTotal) {
+		this.tweetsScraped = tweetsScraped;
+		this.tweetsEnriched = tweetsEnriched;
+		this.bytesRead = bytesRead;
+		this.subRangesDone = subRangesDone;
+		this.subRangesTotal = subRangesTotal;
+	}
+
+	public long getTweetsScraped() {
+		return tweetsScraped;
+	}
+
+	public void setTweetsScraped(long tweetsScraped) {
+		this.tweetsScraped = tweetsScraped;
+	}
+
+	public long getTweetsEnriched() {
+		return tweetsEnriched;
+	}
+
+	public void setTweetsEnriched(long tweetsEnriched) {
+		this.tweetsEnriched = tweetsEnriched;
+	}
+
+	public long getBytesRead() {
+		return bytesRead;
+	}
+
+	public void setBytesRead(long bytesRead) {
+		this.bytesRead = bytesRead;
+	}
+
+	public long getSubRangesDone() {
+		return subRangesDone;
+	}
+
+	public void setSubRangesDone(long subRangesDone) {
+		this.subRangesDone = subRangesDone;
+	}
+
+	public long getSubRangesTotal() {
+		return subRangesTotal;
+	}
+
+	public void setSubRangesTotal(long subRangesTotal) {
+		this.subRangesTotal = subRangesTotal;
+	}
+}
@@ -14,6 +14,7 @@ public class StatusResponse {
 	private List<CollectRequest> query;
 	private Integer nbTweets;
 	private String message;
+	private CollectProgress progress;
 
 	public StatusResponse(String session, Date started, Date ended, Status status, List<CollectRequest> query,
 			Integer nbTweet, String message) {
@@ -85,4 +86,12 @@ public class StatusResponse {
 	public void setNbTweets(Integer nbTweets) {
 		this.nbTweets = nbTweets;
 	}
+
+	public CollectProgress getProgress() {
+		return progress;
+	}
+
+	public void setProgress(CollectProgress progress) {
+		this.progress = progress;
+	}
 }
@@ -5,10 +5,10 @@ import java.util.List;
 
 import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.ObjectCodec;
 import com.fasterxml.jackson.core.TreeNode;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.DeserializationContext;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
 
 
@@ -19,6 +19,11 @@ public class TwittieDeserializer extends StdDeserializer<TwittieResponse> {
 	 */
 	private static final long serialVersionUID = 54707317053927190L;
 
+    private static final TypeReference<List<TwittieResponse.TwittieEntityJson<TwittieResponse.Person>>> PERSONS = new TypeReference<List<TwittieResponse.TwittieEntityJson<TwittieResponse.Person>>>(){};
+    private static final TypeReference<List<TwittieResponse.TwittieEntityJson<TwittieResponse.UserID>>> USER_IDS = new TypeReference<List<TwittieResponse.TwittieEntityJson<TwittieResponse.UserID>>>(){};
+    private static final TypeReference<List<TwittieResponse.TwittieEntityJson<TwittieResponse.Location>>> LOCATIONS = new TypeReference<List<TwittieResponse.TwittieEntityJson<TwittieResponse.Location>>>(){};
+    private static final TypeReference<List<TwittieResponse.TwittieEntityJson<TwittieResponse.Organization>>> ORGANIZATIONS = new TypeReference<List<TwittieResponse.TwittieEntityJson<TwittieResponse.Organization>>>(){};
+
 	public TwittieDeserializer() {
         this(null);
     }
@@ -29,26 +34,27 @@ public class TwittieDeserializer extends StdDeserializer<TwittieResponse> {
     @Override
     public TwittieResponse deserialize(JsonParser parser, DeserializationContext deserializationContext) throws IOException, JsonProcessingException {
 
-        ObjectMapper mapper = new ObjectMapper();
+        // entities are read with the mapper reading the response
+        ObjectCodec mapper = parser.getCodec();
 
         TwittieResponse tr = new TwittieResponse();
 
         TreeNode node = parser.readValueAsTree();
 
         if (node.get(":Person") != null)
-            tr.setPerson(mapper.readValue(node.get(":Person").traverse(), new TypeReference<List<TwittieResponse.TwittieEntityJson<TwittieResponse.Person>>>(){}));
+            tr.setPerson(mapper.readValue(node.get(":Person").traverse(mapper), PERSONS));
 
         if (node.get(":UserID") != null)
         {
-            tr.setUserID(mapper.readValue(node.get(":UserID").traverse(),new TypeReference<List<TwittieResponse.TwittieEntityJson<TwittieResponse.UserID>>>(){}));
+            tr.setUserID(mapper.readValue(node.get(":UserID").traverse(mapper), USER_IDS));
         }
 
         if (node.get(":Location") != null)
-            tr.setLocation(mapper.readValue(node.get(":Location").traverse(), new TypeReference<List<TwittieResponse.TwittieEntityJson<TwittieResponse.Location>>>(){}));
+            tr.setLocation(mapper.readValue(node.get(":Location").traverse(mapper), LOCATIONS));
 
 
         if (node.get(":Organization") != null)
-            tr.setOrganization(mapper.readValue(node.get(":Organization").traverse(),new TypeReference<List<TwittieResponse.TwittieEntityJson<TwittieResponse.Organization>>>(){}));
+            tr.setOrganization(mapper.readValue(node.get(":Organization").traverse(mapper), ORGANIZATIONS));
 
         return tr;
     }
@@ -0,0 +1,107 @@
+package com.afp.medialab.weverify.social.twint;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import com.afp.medialab.weverify.social.dao.entity.CollectHistory;
+import com.afp.medialab.weverify.social.dao.entity.CollectJob;
+import com.afp.medialab.weverify.social.dao.service.CollectJobService;
+import com.afp.medialab.weverify.social.dao.service.CollectService;
+import com.afp.medialab.weverify.social.model.CollectRequest;
+import com.afp.medialab.weverify.social.model.Status;
+
+/**
+ * Queue again at startup the slices left unfinished by the previous run.
+ *
+ * A slice stopped while scraping is scraped again from its watermark, read from
+ * Elasticsearch: twint collects from the newest to the oldest tweet so only the
+ * range older than the oldest collected tweet is left. A scraped slice is only enriched. A
+ * slice already started too many times is counted as failed.
+ *
+ * @author Medialab
+ */
+@Component
+public class CollectJobRecovery {
+
+	private static final Logger Logger = LoggerFactory.getLogger(CollectJobRecovery.class);
+
+	@Value("${application.twintcall.twint_job_max_attempts:3}")
+	private Integer maxAttempts;
+
+	@Autowired
+	private CollectJobService jobService;
+
+	@Autowired
+	private CollectService collectService;
+
+	@Autowired
+	private ResumeCheckpointService checkpoints;
+
+	@Autowired
+	private TwintThreadGroup threadGroup;
+
+	@EventListener(ApplicationReadyEvent.class)
+	public void recover() {
+		jobService.purgeFinishedJobs();
+		List<CollectJob> jobs = jobService.unfinishedJobs();
+		if (jobs.isEmpty())
+			return;
+		Logger.info("Resume {} unfinished slices", jobs.size());
+		Map<String, CollectHistory> histories = new HashMap<String, CollectHistory>();
+		for (CollectJob job : jobs) {
+			try {
+				CollectHistory collectHistory = histories.computeIfAbsent(job.getSession(),
+						collectService::getCollectInfo);
+				if (collectHistory == null) {
+					Logger.error("No collect history for slice {} of session {}", job.getId(), job.getSession());
+					jobService.jobFailed(job.getId());
+					continue;
+				}
+				resume(collectHistory, job);
+			} catch (RuntimeException e) {
+				Logger.error("Unable to resume slice {} of session {}", job.getId(), job.getSession(), e);
+			}
+		}
+	}
+
+	private void resume(CollectHistory collectHistory, CollectJob job) {
+		CollectRequest request = jobService.toCollectRequest(job);
+		if (request == null) {
+			threadGroup.abandonSlice(collectHistory, new CollectRequest(), job.getId());
+			return;
+		}
+		if (job.getState() == Status.CountingWords) {
+			threadGroup.resumeSlice(collectHistory, null, request, job.getId());
+			return;
+		}
+		if (job.getAttempts() != null && job.getAttempts() >= maxAttempts) {
+			Logger.error("Slice {} of session {} failed {} times", job.getId(), job.getSession(), job.getAttempts());
+			threadGroup.abandonSlice(collectHistory, request, job.getId());
+			return;
+		}
+		CollectRequest scrapeRequest = new CollectRequest(request);
+		if (job.getState() == Status.Running && !request.isDisableTimeRange()) {
+			Date watermark = checkpoints.findWhereIndexingStopped(request);
+			if (watermark != null) {
+				if (!watermark.after(request.getFrom())) {
+					threadGroup.resumeSlice(collectHistory, null, request, job.getId());
+					return;
+				}
+				scrapeRequest.setUntil(watermark);
+			}
+		}
+		Logger.info("Resume slice {} of session {}: {} - {}", job.getId(), job.getSession(),
+				scrapeRequest.getFrom(), scrapeRequest.getUntil());
+		threadGroup.resumeSlice(collectHistory, scrapeRequest, request, job.getId());
+	}
+}
@@ -0,0 +1,65 @@
+package com.afp.medialab.weverify.social.twint;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Ids of the tweets indexed without Twittie entities because the service was
+ * unavailable. They are annotated again by {@link DeferredEnrichmentTask}.
+ *
+ * @author Medialab
+ */
+@Component
+public class DeferredEnrichmentQueue {
+
+	private static final Logger Logger = LoggerFactory.getLogger(DeferredEnrichmentQueue.class);
+
+	private final ConcurrentLinkedQueue<String> ids = new ConcurrentLinkedQueue<String>();
+	private final AtomicInteger size = new AtomicInteger();
+
+	@Value("${application.twittie.deferred.max-size:1000000}")
+	private int maxSize;
+
+	/**
+	 * @param tweetIds
+	 */
+	public void defer(Collection<String> tweetIds) {
+		int added = 0;
+		for (String id : tweetIds) {
+			if (size.get() >= maxSize) {
+				Logger.error("Deferred enrichment queue is full, {} tweets will keep no Twittie entity",
+						tweetIds.size() - added);
+				return;
+			}
+			ids.add(id);
+			size.incrementAndGet();
+			added++;
+		}
+	}
+
+	/**
+	 * @param max
+	 * @return at most max tweet ids, removed from the queue
+	 */
+	public List<String> poll(int max) {
+		List<String> polled = new ArrayList<String>();
+		String id;
+		while (polled.size() < max && (id = ids.poll()) != null) {
+			size.decrementAndGet();
+			polled.add(id);
+		}
+		return polled;
+	}
+
+	public int size() {
+		return size.get();
+	}
+}
@@ -0,0 +1,79 @@
+package com.afp.medialab.weverify.social.twint;
+
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.afp.medialab.weverify.social.model.twint.TwintModel;
+
+/**
+ * Annotate again in bulk the tweets deferred while the Twittie circuit was
+ * open, as soon as the service accepts calls again.
+ *
+ * @author Medialab
+ */
+@Component
+public class DeferredEnrichmentTask {
+
+	private static final Logger Logger = LoggerFactory.getLogger(DeferredEnrichmentTask.class);
+
+	private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "twittieDeferred");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	@Value("${application.twittie.deferred.retry-seconds:30}")
+	private Long retrySeconds;
+
+	@Value("${application.twittie.deferred.bulk-size:1000}")
+	private Integer bulkSize;
+
+	@Autowired
+	private DeferredEnrichmentQueue queue;
+
+	@Autowired
+	private TwittieCircuitBreaker breaker;
+
+	@Autowired
+	private ESOperations esOperation;
+
+	@PostConstruct
+	public void start() {
+		scheduler.scheduleWithFixedDelay(this::enrichDeferred, retrySeconds, retrySeconds, TimeUnit.SECONDS);
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		scheduler.shutdownNow();
+	}
+
+	private void enrichDeferred() {
+		try {
+			// tweets failing again are deferred again by the enrichment, and wait for
+			// the next run
+			int remaining = queue.size();
+			while (remaining > 0 && breaker.isAvailable()) {
+				List<String> ids = queue.poll(Math.min(bulkSize, remaining));
+				if (ids.isEmpty())
+					return;
+				remaining -= ids.size();
+				List<TwintModel> tms = esOperation.findTweets(ids);
+				Logger.info("Annotate again {} deferred tweets, {} left", tms.size(), queue.size());
+				esOperation.indexWordsObj(tms);
+			}
+		} catch (Exception e) {
+			Logger.error("Error enriching deferred tweets: {}", e.getMessage());
+		}
+	}
+}
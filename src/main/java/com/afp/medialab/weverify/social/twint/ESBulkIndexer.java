@@ -0,0 +1,166 @@
+package com.afp.medialab.weverify.social.twint;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+
+import javax.annotation.PreDestroy;
+
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.bulk.BackoffPolicy;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkProcessor;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.update.UpdateRequest;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.common.unit.ByteSizeUnit;
+import org.elasticsearch.common.unit.ByteSizeValue;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
+import org.springframework.data.elasticsearch.core.mapping.ElasticsearchPersistentEntity;
+import org.springframework.stereotype.Component;
+
+import com.afp.medialab.weverify.social.model.twint.TwintModel;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Send partial updates of tweets to Elasticsearch with a BulkProcessor.
+ *
+ * Updates are flushed every max-actions updates, max-bytes of payload or
+ * flush-interval milliseconds. At most concurrent-requests bulk requests are
+ * in flight, adding an update blocks while they are all busy. Items rejected
+ * by a full cluster (429) are retried with an exponential backoff. Item
+ * outcomes are published as the es.bulk.items counter.
+ *
+ * @author Medialab
+ */
+@Component
+public class ESBulkIndexer {
+
+	private static final Logger Logger = LoggerFactory.getLogger(ESBulkIndexer.class);
+
+	private final String index;
+	private final String type;
+	private final BulkProcessor bulkProcessor;
+	private final Counter successCounter;
+	private final Counter failureCounter;
+	private final AtomicInteger inFlight = new AtomicInteger();
+
+	@Autowired
+	public ESBulkIndexer(RestHighLevelClient client, ElasticsearchOperations esOperation,
+			MeterRegistry meterRegistry, @Value("${application.elasticsearch.bulk.max-actions:1000}") int maxActions,
+			@Value("${application.elasticsearch.bulk.max-bytes:5242880}") long maxBytes,
+			@Value("${application.elasticsearch.bulk.flush-interval:5000}") long flushInterval,
+			@Value("${application.elasticsearch.bulk.concurrent-requests:2}") int concurrentRequests,
+			@Value("${application.elasticsearch.bulk.backoff-delay:100}") long backoffDelay,
+			@Value("${application.elasticsearch.bulk.max-retries:5}") int maxRetries) {
+		this((request, listener) -> client.bulkAsync(request, RequestOptions.DEFAULT, listener),
+				esOperation.getPersistentEntityFor(TwintModel.class), meterRegistry, maxActions, maxBytes,
+				flushInterval, concurrentRequests, backoffDelay, maxRetries);
+	}
+
+	private ESBulkIndexer(BiConsumer<BulkRequest, ActionListener<BulkResponse>> consumer,
+			ElasticsearchPersistentEntity<?> entity, MeterRegistry meterRegistry, int maxActions, long maxBytes,
+			long flushInterval, int concurrentRequests, long backoffDelay, int maxRetries) {
+		this(consumer, entity.getIndexName(), entity.getIndexType(), meterRegistry, maxActions, maxBytes,
+				flushInterval, concurrentRequests, backoffDelay, maxRetries);
+	}
+
+	public ESBulkIndexer(BiConsumer<BulkRequest, ActionListener<BulkResponse>> consumer, String index, String type,
+			MeterRegistry meterRegistry, int maxActions, long maxBytes, long flushInterval, int concurrentRequests,
+			long backoffDelay, int maxRetries) {
+		this.index = index;
+		this.type = type;
+		this.successCounter = counter(meterRegistry, "success");
+		this.failureCounter = counter(meterRegistry, "failure");
+		this.bulkProcessor = BulkProcessor.builder(consumer, new Listener()).setBulkActions(maxActions)
+				.setBulkSize(new ByteSizeValue(maxBytes, ByteSizeUnit.BYTES))
+				.setFlushInterval(TimeValue.timeValueMillis(flushInterval))
+				.setConcurrentRequests(concurrentRequests)
+				.setBackoffPolicy(BackoffPolicy.exponentialBackoff(TimeValue.timeValueMillis(backoffDelay), maxRetries))
+				.build();
+	}
+
+	private static Counter counter(MeterRegistry meterRegistry, String outcome) {
+		return Counter.builder("es.bulk.items").description("Elasticsearch bulk items").tag("outcome", outcome)
+				.register(meterRegistry);
+	}
+
+	/**
+	 * Queue a partial update of a tweet
+	 *
+	 * @param id   tweet id
+	 * @param json partial document, JSON bytes
+	 */
+	public void update(String id, byte[] json) {
+		bulkProcessor.add(new UpdateRequest(index, type, id).doc(json, XContentType.JSON));
+	}
+
+	/**
+	 * Send the queued updates and wait for the bulk requests in flight
+	 */
+	public void flush() {
+		bulkProcessor.flush();
+		synchronized (inFlight) {
+			try {
+				while (inFlight.get() > 0)
+					inFlight.wait();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	@PreDestroy
+	public void close() throws InterruptedException {
+		bulkProcessor.awaitClose(30, TimeUnit.SECONDS);
+	}
+
+	private class Listener implements BulkProcessor.Listener {
+
+		@Override
+		public void beforeBulk(long executionId, BulkRequest request) {
+			inFlight.incrementAndGet();
+		}
+
+		@Override
+		public void afterBulk(long executionId, BulkRequest request, BulkResponse response) {
+			int failures = 0;
+			for (BulkItemResponse item : response.getItems()) {
+				if (!item.isFailed())
+					continue;
+				if (failures++ == 0)
+					Logger.error("Bulk update of tweet {} failed: {}", item.getId(), item.getFailureMessage());
+			}
+			if (failures > 0)
+				Logger.error("{}/{} updates failed in bulk {}", failures, response.getItems().length, executionId);
+			successCounter.increment(response.getItems().length - failures);
+			failureCounter.increment(failures);
+			done();
+		}
+
+		@Override
+		public void afterBulk(long executionId, BulkRequest request, Throwable failure) {
+			Logger.error("Bulk {} of {} updates failed: {}", executionId, request.numberOfActions(),
+					failure.getMessage());
+			failureCounter.increment(request.numberOfActions());
+			done();
+		}
+
+		private void done() {
+			synchronized (inFlight) {
+				inFlight.decrementAndGet();
+				inFlight.notifyAll();
+			}
+		}
+	}
+}
@@ -10,6 +10,7 @@ import org.springframework.data.elasticsearch.client.ClientConfiguration;
 import org.springframework.data.elasticsearch.client.RestClients;
 import org.springframework.data.elasticsearch.config.AbstractElasticsearchConfiguration;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
 import org.springframework.web.client.RestTemplate;
 
 @Configuration
@@ -25,7 +26,13 @@ public class ESConfiguration extends AbstractElasticsearchConfiguration {
 
 	@Bean("ESRestTempate")
 	public RestTemplate getRestTemplate() {
-		return new RestTemplate();
+		SimpleClientHttpRequestFactory clientHttpRequestFactory = new SimpleClientHttpRequestFactory();
+		// Connect timeout
+		clientHttpRequestFactory.setConnectTimeout(5_000);
+
+		// Read timeout
+		clientHttpRequestFactory.setReadTimeout(10_000);
+		return new RestTemplate(clientHttpRequestFactory);
 	}
 
 	@Override
@@ -5,41 +5,71 @@ import static org.elasticsearch.index.query.QueryBuilders.existsQuery;
 import static org.elasticsearch.index.query.QueryBuilders.matchPhraseQuery;
 import static org.elasticsearch.index.query.QueryBuilders.matchQuery;
 import static org.elasticsearch.index.query.QueryBuilders.rangeQuery;
+import static org.elasticsearch.index.query.QueryBuilders.termQuery;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.text.SimpleDateFormat;
+import java.io.UncheckedIOException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 import javax.transaction.Transactional;
 
-import org.elasticsearch.action.update.UpdateRequest;
-import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.action.admin.indices.alias.IndicesAliasesRequest;
+import org.elasticsearch.action.admin.indices.alias.IndicesAliasesRequest.AliasActions;
+import org.elasticsearch.action.admin.indices.alias.get.GetAliasesRequest;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.client.GetAliasesResponse;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.cluster.metadata.AliasMetaData;
 import org.elasticsearch.index.query.BoolQueryBuilder;
+import org.elasticsearch.index.query.Operator;
 import org.elasticsearch.index.query.QueryBuilder;
 import org.elasticsearch.index.query.QueryBuilders;
 import org.elasticsearch.index.query.TermsQueryBuilder;
+import org.elasticsearch.search.aggregations.AggregationBuilders;
+import org.elasticsearch.search.aggregations.bucket.histogram.Histogram;
+import org.elasticsearch.search.aggregations.metrics.max.Max;
+import org.elasticsearch.search.aggregations.metrics.min.Min;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.PageRequest;
-import org.springframework.data.domain.Sort;
 import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
-import org.springframework.data.elasticsearch.core.ScrolledPage;
-import org.springframework.data.elasticsearch.core.query.BulkOptions;
+import org.springframework.data.elasticsearch.core.mapping.ElasticsearchPersistentEntity;
 import org.springframework.data.elasticsearch.core.query.NativeSearchQueryBuilder;
 import org.springframework.data.elasticsearch.core.query.SearchQuery;
-import org.springframework.data.elasticsearch.core.query.UpdateQuery;
-import org.springframework.data.elasticsearch.core.query.UpdateQueryBuilder;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.stereotype.Component;
 
 import com.afp.medialab.weverify.social.model.CollectRequest;
 import com.afp.medialab.weverify.social.model.twint.TwintModel;
 import com.afp.medialab.weverify.social.model.twint.WordsInTweet;
+import com.afp.medialab.weverify.social.util.DateRange;
+import com.afp.medialab.weverify.social.util.QuerySignature;
+import com.afp.medialab.weverify.social.util.QuerySubsumption;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
 
 @Component
 @Transactional
@@ -48,13 +78,45 @@ public class ESOperations {
 	@Autowired
 	private ElasticsearchOperations esOperation;
 
+	@Autowired
+	private RestHighLevelClient client;
+
 	@Autowired
 	private TweetsPostProcess twintModelAdapter;
 
-	private SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+	@Autowired
+	private SessionProgressRegistry progressRegistry;
+
+	@Autowired
+	private ESBulkIndexer bulkIndexer;
+
+	@Autowired
+	private ESTweetCursor tweetCursor;
+
+	@Autowired
+	@Qualifier("twintEnrichSliceTaskExecutor")
+	private ThreadPoolTaskExecutor sliceExecutor;
+
+	@Value("${application.twintcall.enrich-slice-min-tweets:10000}")
+	private long sliceMinTweets;
+
+	@Value("${application.elasticsearch.view-retention-days:7}")
+	private long viewRetentionDays;
+
+	private static final DateTimeFormatter viewDay = DateTimeFormatter.ofPattern("yyyyMMdd");
+
+	/**
+	 * Shared by the enrichment, checkpoint and splitter threads
+	 */
+	private static final DateTimeFormatter dateFormat = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")
+			.withZone(ZoneId.systemDefault());
 
 	private static Logger Logger = LoggerFactory.getLogger(ESOperations.class);
 
+	private static final ObjectWriter witWriter = new ObjectMapper()
+			.writerFor(new TypeReference<List<WordsInTweet>>() {
+			});
+
 	/**
 	 * Search query with essid
 	 * 
@@ -66,42 +128,62 @@ public class ESOperations {
 	 */
 	public void enrichWithTweetie(String essid, String start, String end) throws IOException {
 		QueryBuilder builder = boolQuery().must(matchQuery("essid", essid));
-		SearchQuery searchQuery = new NativeSearchQueryBuilder().withQuery(builder).withPageable(PageRequest.of(0, 10))
-				.build();
-		ScrolledPage<TwintModel> scroll = esOperation.startScroll(1000, searchQuery, TwintModel.class);
-		String scrollId = scroll.getScrollId();
-		List<TwintModel> model = new ArrayList<TwintModel>();
-		while (scroll.hasContent()) {
-			model.addAll(scroll.getContent());
-			scrollId = scroll.getScrollId();
-			scroll = esOperation.continueScroll(scrollId, 1000, TwintModel.class);
-		}
-		indexWordsObj(model);
+		tweetCursor.forEachPage(builder, tweets -> indexWordsObj(tweets));
+		bulkIndexer.flush();
 	}
 
 	/**
-	 * Get Twint request from ES that match with the current collectRequest and with
-	 * tweets without wit fields.
+	 * Add Twittie data to the tweets from ES that match with the current
+	 * collectRequest and without wit fields. Each page is enriched before the
+	 * next one is fetched. Large requests are sliced by date, slices are enriched
+	 * in parallel.
 	 * 
 	 * @param collectRequest
-	 * @return
+	 * @param session        collect session, may be null
+	 * @return number of tweets found
 	 * @throws IOException
 	 */
-	public List<TwintModel> enrichWithTweetie(CollectRequest collectRequest) throws IOException {
+	public long enrichWithTweetie(CollectRequest collectRequest, String session) throws IOException {
 
 		BoolQueryBuilder builder = searchQueryBuilder(collectRequest);
 
-		SearchQuery searchQuery = new NativeSearchQueryBuilder().withQuery(builder).withPageable(PageRequest.of(0, 10))
-				.build();
-		ScrolledPage<TwintModel> scroll = esOperation.startScroll(1000, searchQuery, TwintModel.class);
-		String scrollId = scroll.getScrollId();
-		List<TwintModel> model = new ArrayList<TwintModel>();
-		while (scroll.hasContent()) {
-			model.addAll(scroll.getContent());
-			scrollId = scroll.getScrollId();
-			scroll = esOperation.continueScroll(scrollId, 1000, TwintModel.class);
+		List<QueryBuilder> slices = enrichSlices(collectRequest, builder);
+		List<CompletableFuture<Long>> futures = new ArrayList<CompletableFuture<Long>>(slices.size());
+		for (QueryBuilder slice : slices)
+			futures.add(CompletableFuture.supplyAsync(() -> {
+				try {
+					return tweetCursor.forEachPage(slice, tweets -> indexWordsObj(tweets, session));
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			}, sliceExecutor));
+
+		long nbTweets = 0;
+		try {
+			CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[futures.size()])).join();
+			for (CompletableFuture<Long> future : futures)
+				nbTweets += future.join();
+		} catch (CompletionException e) {
+			throw new IOException("Enrichment failed", e.getCause());
+		} finally {
+			bulkIndexer.flush();
 		}
-		return model;
+		return nbTweets;
+	}
+
+	/**
+	 * One slice by enrich slice thread when there are enough tweets to enrich
+	 */
+	private List<QueryBuilder> enrichSlices(CollectRequest collectRequest, BoolQueryBuilder builder) {
+		int nbSlices = sliceExecutor.getMaxPoolSize();
+		if (nbSlices < 2 || collectRequest.isDisableTimeRange())
+			return Collections.singletonList(builder);
+		long nbTweets = esOperation.count(new NativeSearchQueryBuilder().withQuery(builder).build(),
+				TwintModel.class);
+		if (nbTweets < sliceMinTweets)
+			return Collections.singletonList(builder);
+		Logger.debug("enrich {} tweets in {} slices", nbTweets, nbSlices);
+		return tweetCursor.slice(builder, collectRequest.getFrom(), collectRequest.getUntil(), nbSlices);
 	}
 
 	/**
@@ -110,18 +192,28 @@ public class ESOperations {
 	 * @return
 	 */
 	private BoolQueryBuilder searchQueryBuilder(CollectRequest collectRequest) {
+		BoolQueryBuilder builder = collectedQueryBuilder(collectRequest);
+		builder.mustNot(existsQuery("wit"));
+		return builder;
+	}
+
+	/**
+	 * Build ES query for all tweets collected by the current search
+	 * @param collectRequest
+	 * @return
+	 */
+	private BoolQueryBuilder collectedQueryBuilder(CollectRequest collectRequest) {
 		String keywordQuery = TwintRequestGenerator.getInstance().generateSearch(collectRequest);
 		BoolQueryBuilder builder = QueryBuilders.boolQuery();
 		builder.must(matchPhraseQuery("search", keywordQuery));
-		builder.mustNot(existsQuery("wit"));
 		Set<String> users = collectRequest.getUserList();
 		if (users != null && !users.isEmpty()) {
 			QueryBuilder userQueryBuilder = new TermsQueryBuilder("username", users);
 			builder.must(userQueryBuilder);
 		}
 		if (!collectRequest.isDisableTimeRange()) {
-			String from = dateFormat.format(collectRequest.getFrom());
-			String until = dateFormat.format(collectRequest.getUntil());
+			String from = dateFormat.format(Instant.ofEpochMilli(collectRequest.getFrom().getTime()));
+			String until = dateFormat.format(Instant.ofEpochMilli(collectRequest.getUntil().getTime()));
 			Logger.debug("search from {} to {}", from, until);
 
 			builder.filter(
@@ -131,28 +223,143 @@ public class ESOperations {
 	}
 
 	/**
-	 * Get the latest tweet extracted for this session. (Oldest tweet is always
-	 * searched)
+	 * Create a filtered alias showing the tweets of a narrower search among the
+	 * tweets collected for a broader one, see {@link QuerySubsumption}. Extra
+	 * keywords and banned words are matched on the tweet text, all their words
+	 * must match as in the twint search.
 	 *
-	 * @param request
-	 * @param session
-	 * @return
+	 * Alias names hold their creation day: an alias of the same narrower search
+	 * and range is reused if it is not expired, aliases older than the retention
+	 * are removed on each call.
+	 *
+	 * @param broader  criteria of the collected search
+	 * @param narrower search to answer, with its time range
+	 * @return alias name
+	 * @throws IOException
 	 */
-	public Date findWhereIndexingStopped(CollectRequest request) {
+	public String createFilteredView(CollectRequest broader, CollectRequest narrower) throws IOException {
+		ElasticsearchPersistentEntity<?> entity = esOperation.getPersistentEntityFor(TwintModel.class);
+		String prefix = entity.getIndexName() + "-view-";
+		String fingerprint = QuerySignature.fingerprint(QuerySignature.of(narrower) + "|"
+				+ narrower.getFrom().getTime() + "|" + narrower.getUntil().getTime());
+		LocalDate today = LocalDate.now(ZoneOffset.UTC);
+		String expired = prefix + viewDay.format(today.minusDays(viewRetentionDays));
+
+		IndicesAliasesRequest request = new IndicesAliasesRequest();
+		String existing = null;
+		for (String view : filteredViews(entity.getIndexName(), prefix)) {
+			// same length names, the day is compared as text
+			if (view.compareTo(expired) < 0)
+				request.addAliasAction(AliasActions.remove().index(entity.getIndexName()).alias(view));
+			else if (view.endsWith("-" + fingerprint))
+				existing = view;
+		}
+		if (existing != null) {
+			if (!request.getAliasActions().isEmpty())
+				client.indices().updateAliases(request, RequestOptions.DEFAULT);
+			return existing;
+		}
 
-		QueryBuilder builder = searchQueryBuilder(request);
+		CollectRequest scope = new CollectRequest(broader);
+		scope.setFrom(narrower.getFrom());
+		scope.setUntil(narrower.getUntil());
+		scope.setDisableTimeRange(false);
+		BoolQueryBuilder filter = collectedQueryBuilder(scope);
+		for (String keyword : QuerySubsumption.extra(broader.getKeywordList(), narrower.getKeywordList()))
+			filter.must(matchQuery("tweet", keyword).operator(Operator.AND));
+		for (String bannedWord : QuerySubsumption.extra(broader.getBannedWords(), narrower.getBannedWords()))
+			filter.mustNot(matchQuery("tweet", bannedWord).operator(Operator.AND));
+		Set<String> users = narrower.getUserList();
+		if (users != null && !users.isEmpty() && !users.equals(broader.getUserList()))
+			filter.must(new TermsQueryBuilder("username", users));
+		String lang = narrower.getLang();
+		if (lang != null && !lang.isEmpty() && (broader.getLang() == null || broader.getLang().isEmpty()))
+			filter.must(termQuery("lang", lang));
+
+		String alias = prefix + viewDay.format(today) + "-" + fingerprint;
+		request.addAliasAction(AliasActions.add().index(entity.getIndexName()).alias(alias).filter(filter));
+		client.indices().updateAliases(request, RequestOptions.DEFAULT);
+		Logger.debug("filtered view {} : {}", alias, filter);
+		return alias;
+	}
+
+	private Set<String> filteredViews(String index, String prefix) throws IOException {
+		GetAliasesResponse response = client.indices()
+				.getAlias(new GetAliasesRequest(prefix + "*").indices(index), RequestOptions.DEFAULT);
+		Set<String> views = new TreeSet<String>();
+		for (Set<AliasMetaData> aliases : response.getAliases().values())
+			for (AliasMetaData alias : aliases)
+				views.add(alias.alias());
+		return views;
+	}
 
-		SearchQuery searchQuery = new NativeSearchQueryBuilder().withQuery(builder).build()
-				.addSort(Sort.by("date").ascending()).setPageable(PageRequest.of(0, 1));
-		final List<TwintModel> hits = esOperation.queryForList(searchQuery, TwintModel.class);
+	/**
+	 * Count the tweets already indexed for this search by time bucket
+	 * 
+	 * @param collectRequest
+	 * @param interval       bucket size in milliseconds
+	 * @return tweets count by bucket start (epoch millis)
+	 */
+	public SortedMap<Long, Long> tweetsHistogram(CollectRequest collectRequest, long interval) {
+		ElasticsearchPersistentEntity<?> entity = esOperation.getPersistentEntityFor(TwintModel.class);
+		SearchQuery searchQuery = new NativeSearchQueryBuilder().withQuery(collectedQueryBuilder(collectRequest))
+				.withIndices(entity.getIndexName()).withTypes(entity.getIndexType())
+				.withPageable(PageRequest.of(0, 1)).addAggregation(AggregationBuilders.dateHistogram("density")
+						.field("date").interval(interval).format("epoch_millis").minDocCount(1))
+				.build();
+		return esOperation.query(searchQuery, response -> {
+			SortedMap<Long, Long> histogram = new TreeMap<Long, Long>();
+			Histogram density = response.getAggregations().get("density");
+			for (Histogram.Bucket bucket : density.getBuckets())
+				histogram.put(Long.parseLong(bucket.getKeyAsString()), bucket.getDocCount());
+			return histogram;
+		});
+	}
 
-		if (hits.size() < 1) {
-			Logger.error("No tweets found");
+	/**
+	 * Dates of the oldest and newest tweets collected for this search, with a
+	 * min/max aggregation and no hit
+	 *
+	 * @param request
+	 * @return null if no tweet is collected
+	 * @throws IOException
+	 */
+	public DateRange collectedDateRange(CollectRequest request) throws IOException {
+		ElasticsearchPersistentEntity<?> entity = esOperation.getPersistentEntityFor(TwintModel.class);
+		SearchSourceBuilder source = new SearchSourceBuilder().query(collectedQueryBuilder(request)).size(0)
+				.aggregation(AggregationBuilders.min("oldest").field("date"))
+				.aggregation(AggregationBuilders.max("newest").field("date"));
+		SearchResponse response = client.search(
+				new SearchRequest(entity.getIndexName()).types(entity.getIndexType()).source(source),
+				RequestOptions.DEFAULT);
+		if (response.getHits().getTotalHits() == 0)
 			return null;
-		}
-		TwintModel twintModel = hits.get(0);
-		return twintModel.getDate();
+		Min oldest = response.getAggregations().get("oldest");
+		Max newest = response.getAggregations().get("newest");
+		return new DateRange(new Date((long) oldest.getValue()), new Date((long) newest.getValue()));
+	}
 
+	/**
+	 * Get tweets by id
+	 * 
+	 * @param ids
+	 * @return
+	 */
+	public List<TwintModel> findTweets(List<String> ids) {
+		if (ids.isEmpty())
+			return new ArrayList<TwintModel>();
+		SearchQuery searchQuery = new NativeSearchQueryBuilder()
+				.withQuery(QueryBuilders.idsQuery().addIds(ids.toArray(new String[ids.size()])))
+				.withPageable(PageRequest.of(0, ids.size())).build();
+		return esOperation.queryForList(searchQuery, TwintModel.class);
+	}
+
+	/**
+	 * Make the latest indexed and updated tweets visible to searches
+	 */
+	public void refresh() {
+		bulkIndexer.flush();
+		esOperation.refresh(TwintModel.class);
 	}
 
 	/**
@@ -162,40 +369,47 @@ public class ESOperations {
 	 * @throws IOException
 	 */
 	public void indexWordsObj(List<TwintModel> tms) throws IOException {
-		List<UpdateQuery> updateQueries = new LinkedList<UpdateQuery>();
+		indexWordsObj(tms, null);
+	}
 
+	/**
+	 * Add Twitie data and report enriched tweets to the session progress
+	 * 
+	 * @param tms     Indexed document
+	 * @param session collect session, may be null
+	 * @throws IOException
+	 */
+	public void indexWordsObj(List<TwintModel> tms, String session) throws IOException {
+		// the buffer is reused, each update gets a copy of its bytes
+		ByteArrayOutputStream payload = new ByteArrayOutputStream(1024);
 		int i = 0;
-		boolean allNull = true;
 		Logger.info("call Twittie WS for {} extracted tweets", tms.size());
-		for (TwintModel tm : tms) {
-
+		List<List<WordsInTweet>> wits = twintModelAdapter.buildWit(tms);
+		for (int j = 0; j < tms.size(); j++) {
+			TwintModel tm = tms.get(j);
+			List<WordsInTweet> wit = wits.get(j);
+			if (wit == null)
+				continue;
 			try {
-				allNull = false;
-				// Logger.debug("Builtin wit : " + i++ + "/" + tms.size());
-				List<WordsInTweet> wit = twintModelAdapter.buildWit(tm.getTweet(), tm.getSearch());
-
-				ObjectMapper mapper = new ObjectMapper();
-				String b = "{\"wit\": " + mapper.writeValueAsString(wit) + "}";
-
-				UpdateQuery updateQuery = new UpdateQueryBuilder().withId(tm.getId()).withClass(TwintModel.class)
-						.build();
-
-				UpdateRequest updateRequest = new UpdateRequest();
-
-				updateRequest.doc(b, XContentType.JSON);
-				updateQuery.setUpdateRequest(updateRequest);
-				updateQueries.add(updateQuery);
+				payload.reset();
+				try (JsonGenerator generator = witWriter.getFactory().createGenerator(payload)) {
+					generator.writeStartObject();
+					generator.writeFieldName("wit");
+					witWriter.writeValue(generator, wit);
+					generator.writeEndObject();
+				}
+				bulkIndexer.update(tm.getId(), payload.toByteArray());
 
 				i++;
 			} catch (Exception e) {
 				Logger.error("Error processing this tweet: {} with error : {}", tm.getId(), e.getMessage());
-				// e.printStackTrace();
 			}
 		}
 
 		Logger.debug("{}/{} process  tweets ", i, tms.size());
-		if (!allNull)
-			esOperation.bulkUpdate(updateQueries, BulkOptions.defaultOptions());
+		SessionProgress progress = progressRegistry.get(session);
+		if (progress != null)
+			progress.addTweetsEnriched(i);
 
 	}
 
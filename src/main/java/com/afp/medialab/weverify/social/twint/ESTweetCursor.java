@@ -0,0 +1,120 @@
+package com.afp.medialab.weverify.social.twint;
+
+import static org.elasticsearch.index.query.QueryBuilders.boolQuery;
+import static org.elasticsearch.index.query.QueryBuilders.rangeQuery;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.index.query.QueryBuilder;
+import org.elasticsearch.index.query.RangeQueryBuilder;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.elasticsearch.search.sort.SortOrder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
+import org.springframework.data.elasticsearch.core.ResultsMapper;
+import org.springframework.data.elasticsearch.core.mapping.ElasticsearchPersistentEntity;
+import org.springframework.stereotype.Component;
+
+import com.afp.medialab.weverify.social.model.twint.TwintModel;
+
+/**
+ * Iterate over the tweets matching a query, page by page.
+ *
+ * Pages are sorted on date and tweet id and each page is searched after the last
+ * tweet of the previous one (search_after): no search context is kept on the
+ * cluster between two pages, so there is nothing to release, even when the
+ * iteration stops on an error. Tweets updated during the iteration are neither
+ * skipped nor read twice. The tweet id field is sorted from its doc values,
+ * unlike _id which would be loaded in the heap as fielddata.
+ *
+ * A query can be sliced into date sub-ranges iterated independently.
+ *
+ * @author Medialab
+ */
+@Component
+public class ESTweetCursor {
+
+	public interface PageHandler {
+		void handle(List<TwintModel> tweets) throws IOException;
+	}
+
+	@Autowired
+	private RestHighLevelClient client;
+
+	@Autowired
+	private ElasticsearchOperations esOperation;
+
+	@Autowired
+	private ResultsMapper resultsMapper;
+
+	@Value("${application.elasticsearch.page-size:1000}")
+	private int pageSize;
+
+	/**
+	 * Give every page of tweets to the handler, the next page is fetched once the
+	 * handler returns
+	 *
+	 * @param query
+	 * @param handler
+	 * @return number of tweets read
+	 * @throws IOException
+	 */
+	public long forEachPage(QueryBuilder query, PageHandler handler) throws IOException {
+		ElasticsearchPersistentEntity<?> entity = esOperation.getPersistentEntityFor(TwintModel.class);
+		long nbTweets = 0;
+		Object[] after = null;
+		while (true) {
+			SearchSourceBuilder source = new SearchSourceBuilder().query(query).size(pageSize)
+					.sort("date", SortOrder.ASC).sort("id", SortOrder.ASC);
+			if (after != null)
+				source.searchAfter(after);
+			SearchRequest request = new SearchRequest(entity.getIndexName()).types(entity.getIndexType())
+					.source(source);
+			SearchResponse response = client.search(request, RequestOptions.DEFAULT);
+			SearchHit[] hits = response.getHits().getHits();
+			if (hits.length == 0)
+				return nbTweets;
+			List<TwintModel> tweets = new ArrayList<TwintModel>(hits.length);
+			for (SearchHit hit : hits)
+				tweets.add(resultsMapper.mapSearchHit(hit, TwintModel.class));
+			handler.handle(tweets);
+			nbTweets += hits.length;
+			if (hits.length < pageSize)
+				return nbTweets;
+			after = hits[hits.length - 1].getSortValues();
+		}
+	}
+
+	/**
+	 * Slice a query into date sub-ranges of the same duration
+	 *
+	 * @param query
+	 * @param from     first date, included
+	 * @param until    last date, included
+	 * @param nbSlices
+	 * @return one query by sub-range
+	 */
+	public List<QueryBuilder> slice(QueryBuilder query, Date from, Date until, int nbSlices) {
+		List<QueryBuilder> slices = new ArrayList<QueryBuilder>(nbSlices);
+		long start = from.getTime();
+		long duration = until.getTime() - start;
+		for (int i = 0; i < nbSlices; i++) {
+			RangeQueryBuilder range = rangeQuery("date").format("epoch_millis").gte(start + duration * i / nbSlices);
+			if (i == nbSlices - 1)
+				range.lte(until.getTime());
+			else
+				range.lt(start + duration * (i + 1) / nbSlices);
+			slices.add(boolQuery().must(query).filter(range));
+		}
+		return slices;
+	}
+}
@@ -0,0 +1,91 @@
+package com.afp.medialab.weverify.social.twint;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.afp.medialab.weverify.social.model.CollectRequest;
+import com.afp.medialab.weverify.social.util.DateRange;
+
+/**
+ * Where twint stopped collecting a range.
+ *
+ * twint collects from the newest to the oldest tweet, the watermark of a range
+ * is its oldest collected tweet. It is read with a min aggregation over the
+ * range, whether tweets are enriched or not, and kept in memory by search and
+ * range start: the end of a range moves to the watermark when twint is run
+ * again, its start does not. The watermark of a range only moves back, so a
+ * tweet not visible yet in the index never makes a retry collect again what
+ * is already collected. It is clamped to the range, the first part of a split
+ * range starts like the range and may find its watermark, and it is forgotten
+ * once the range is collected.
+ *
+ * @author Medialab
+ */
+@Service
+public class ResumeCheckpointService {
+
+	private static final Logger Logger = LoggerFactory.getLogger(ResumeCheckpointService.class);
+
+	@Autowired
+	private ESOperations esOperation;
+
+	private final Map<String, Long> watermarks;
+
+	public ResumeCheckpointService(@Value("${application.twintcall.checkpoint-cache-size:10000}") int maxSize) {
+		this.watermarks = Collections.synchronizedMap(new LinkedHashMap<String, Long>(16, 0.75f, true) {
+
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+				return size() > maxSize;
+			}
+		});
+	}
+
+	/**
+	 * @param request collected range
+	 * @return date of the oldest tweet collected in the range, null if none is
+	 *         known
+	 */
+	public Date findWhereIndexingStopped(CollectRequest request) {
+		String key = key(request);
+		try {
+			DateRange collected = esOperation.collectedDateRange(request);
+			if (collected != null)
+				watermarks.merge(key, collected.getStartDate().getTime(), Math::min);
+		} catch (IOException e) {
+			Logger.error("Unable to read the checkpoint of {}: {}", key, e.getMessage());
+		}
+		Long watermark = watermarks.get(key);
+		if (watermark == null)
+			return null;
+		if (!request.isDisableTimeRange())
+			watermark = Math.max(request.getFrom().getTime(), Math.min(watermark, request.getUntil().getTime()));
+		return new Date(watermark);
+	}
+
+	/**
+	 * Forget the watermark of a collected range
+	 *
+	 * @param request range as it was first scraped
+	 */
+	public void forget(CollectRequest request) {
+		watermarks.remove(key(request));
+	}
+
+	private String key(CollectRequest request) {
+		String search = TwintRequestGenerator.getInstance().generateSearch(request);
+		Date from = request.isDisableTimeRange() ? null : request.getFrom();
+		return search + "|" + request.getUserList() + "|" + (from == null ? "" : from.getTime());
+	}
+}
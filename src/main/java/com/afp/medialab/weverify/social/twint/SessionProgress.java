@@ -0,0 +1,151 @@
+package com.afp.medialab.weverify.social.twint;
+
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.afp.medialab.weverify.social.model.CollectProgress;
+import com.afp.medialab.weverify.social.model.CollectRequest;
+import com.afp.medialab.weverify.social.model.Status;
+
+/**
+ * In memory counters of a running collect session. Tweet counters are updated
+ * without locking by twint threads and read by status requests. Thread
+ * counters are updated under the lock of the progress so that exactly one
+ * finished thread or launch sees the end of the session: a launch is counted
+ * as pending from its call until its slices are added, the session does not end
+ * while a launch is pending.
+ *
+ * @author Medialab
+ */
+public class SessionProgress {
+
+	private final String session;
+	private final Date processStart;
+	private final List<CollectRequest> query;
+
+	private volatile Status status = Status.Running;
+
+	private final LongAdder tweetsScraped = new LongAdder();
+	private final LongAdder tweetsEnriched = new LongAdder();
+	private final LongAdder bytesRead = new LongAdder();
+	private final AtomicInteger finishedThreads;
+	private final AtomicInteger successfulThreads;
+	private final AtomicInteger totalThreads;
+	private int pendingLaunches = 0;
+
+	public SessionProgress(String session, Date processStart, List<CollectRequest> query) {
+		this(session, processStart, query, 0, 0, 0);
+	}
+
+	/**
+	 * @param session
+	 * @param processStart
+	 * @param query
+	 * @param finishedThreads   threads already finished by previous runs
+	 * @param successfulThreads
+	 * @param totalThreads
+	 */
+	public SessionProgress(String session, Date processStart, List<CollectRequest> query, int finishedThreads,
+			int successfulThreads, int totalThreads) {
+		this.session = session;
+		this.processStart = processStart;
+		this.query = query;
+		this.finishedThreads = new AtomicInteger(finishedThreads);
+		this.successfulThreads = new AtomicInteger(successfulThreads);
+		this.totalThreads = new AtomicInteger(totalThreads);
+	}
+
+	public void addTweetsScraped(long nbTweets) {
+		tweetsScraped.add(nbTweets);
+	}
+
+	public void addTweetsEnriched(long nbTweets) {
+		tweetsEnriched.add(nbTweets);
+	}
+
+	public void addBytesRead(long nbBytes) {
+		bytesRead.add(nbBytes);
+	}
+
+	/**
+	 * Must be called before the new threads can finish, by a running thread or
+	 * by a pending launch
+	 *
+	 * @param nbSubRanges
+	 */
+	public synchronized void addSubRanges(int nbSubRanges) {
+		totalThreads.addAndGet(nbSubRanges);
+	}
+
+	/**
+	 * Called synchronously when a launch is requested, before its slices are
+	 * known
+	 */
+	public synchronized void launchStarted() {
+		pendingLaunches++;
+	}
+
+	/**
+	 * Called once the slices of a launch are added
+	 *
+	 * @return true if every thread of the session is already finished
+	 */
+	public synchronized boolean launchDone() {
+		pendingLaunches--;
+		return isFinished();
+	}
+
+	/**
+	 * @param successful
+	 * @return true if this was the last running thread of the session
+	 */
+	public synchronized boolean subRangeDone(boolean successful) {
+		if (successful)
+			successfulThreads.incrementAndGet();
+		finishedThreads.incrementAndGet();
+		return isFinished();
+	}
+
+	private boolean isFinished() {
+		return pendingLaunches == 0 && finishedThreads.get() == totalThreads.get();
+	}
+
+	public int getFinishedThreads() {
+		return finishedThreads.get();
+	}
+
+	public int getSuccessfulThreads() {
+		return successfulThreads.get();
+	}
+
+	public int getTotalThreads() {
+		return totalThreads.get();
+	}
+
+	public CollectProgress toCollectProgress() {
+		return new CollectProgress(tweetsScraped.sum(), tweetsEnriched.sum(), bytesRead.sum(), finishedThreads.get(),
+				totalThreads.get());
+	}
+
+	public String getSession() {
+		return session;
+	}
+
+	public Date getProcessStart() {
+		return processStart;
+	}
+
+	public List<CollectRequest> getQuery() {
+		return query;
+	}
+
+	public Status getStatus() {
+		return status;
+	}
+
+	public void setStatus(Status status) {
+		this.status = status;
+	}
+}
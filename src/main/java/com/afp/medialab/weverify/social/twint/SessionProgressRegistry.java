@@ -0,0 +1,66 @@
+package com.afp.medialab.weverify.social.twint;
+
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.springframework.stereotype.Component;
+
+import com.afp.medialab.weverify.social.dao.entity.CollectHistory;
+import com.afp.medialab.weverify.social.dao.entity.Request;
+import com.afp.medialab.weverify.social.model.CollectRequest;
+
+/**
+ * Progress of the running collect sessions, kept in memory so that status
+ * polling does not need to reach the database.
+ *
+ * A session is registered when its twint threads are launched and removed
+ * once its final status has been saved.
+ *
+ * @author Medialab
+ */
+@Component
+public class SessionProgressRegistry {
+
+	private final ConcurrentMap<String, SessionProgress> sessions = new ConcurrentHashMap<>();
+
+	/**
+	 * Get or create the progress of a running collect
+	 *
+	 * @param collectHistory
+	 * @return
+	 */
+	public SessionProgress register(CollectHistory collectHistory) {
+		return sessions.computeIfAbsent(collectHistory.getSession(),
+				session -> new SessionProgress(session, collectHistory.getProcessStart(), query(collectHistory),
+						valueOf(collectHistory.getFinished_threads()), valueOf(collectHistory.getSuccessful_threads()),
+						valueOf(collectHistory.getTotal_threads())));
+	}
+
+	/**
+	 * @param session
+	 * @return progress of the session or null if the session is not running
+	 */
+	public SessionProgress get(String session) {
+		if (session == null)
+			return null;
+		return sessions.get(session);
+	}
+
+	public void remove(String session) {
+		sessions.remove(session);
+	}
+
+	private int valueOf(Integer threads) {
+		return threads == null ? 0 : threads;
+	}
+
+	private List<CollectRequest> query(CollectHistory collectHistory) {
+		List<CollectRequest> collectRequests = new LinkedList<CollectRequest>();
+		for (Request request : collectHistory.getRequests()) {
+			collectRequests.add(new CollectRequest(request));
+		}
+		return collectRequests;
+	}
+}
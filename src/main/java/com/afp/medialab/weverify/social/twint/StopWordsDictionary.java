@@ -0,0 +1,134 @@
+package com.afp.medialab.weverify.social.twint;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.PostConstruct;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Stop words of stopwords.json, in immutable hash sets.
+ *
+ * The glob entry holds the words ignored whatever the language, every other
+ * entry is a language, a language is added by adding its entry to the file.
+ *
+ * @author Medialab
+ */
+@Component
+public class StopWordsDictionary {
+
+	static final String GLOBAL = "glob";
+
+	private final Resource stopWordsResource;
+
+	private Set<String> global = Collections.emptySet();
+	private Map<String, Set<String>> languages = Collections.emptyMap();
+
+	public StopWordsDictionary(@Value("classpath:stopwords.json") Resource stopWordsResource) {
+		this.stopWordsResource = stopWordsResource;
+	}
+
+	@PostConstruct
+	public void load() throws IOException {
+		Map<String, List<String>> stopWords;
+		try (InputStream inputStream = stopWordsResource.getInputStream()) {
+			stopWords = new ObjectMapper().readValue(inputStream, new TypeReference<Map<String, List<String>>>() {
+			});
+		}
+		Map<String, Set<String>> languages = new LinkedHashMap<String, Set<String>>();
+		stopWords.forEach((lang, words) -> {
+			Set<String> set = Collections.unmodifiableSet(new HashSet<String>(words));
+			if (lang.equals(GLOBAL))
+				global = set;
+			else
+				languages.put(lang, set);
+		});
+		this.languages = Collections.unmodifiableMap(languages);
+	}
+
+	/**
+	 * Score each language with the share of its stop words found in the words, in
+	 * a single pass over the words
+	 *
+	 * @param words lower case words of a tweet
+	 * @return language with the best score, null if no stop word is found
+	 */
+	public String guessLanguage(List<String> words) {
+		String[] langs = languages.keySet().toArray(new String[0]);
+		int[] counts = new int[langs.length];
+		for (String word : words)
+			for (int i = 0; i < langs.length; i++)
+				if (languages.get(langs[i]).contains(word))
+					counts[i]++;
+
+		String best = null;
+		double bestScore = 0;
+		for (int i = 0; i < langs.length; i++) {
+			double score = (double) counts[i] / languages.get(langs[i]).size();
+			if (score > bestScore) {
+				best = langs[i];
+				bestScore = score;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * @param word lower case word
+	 * @param lang language of the tweet, may be null
+	 * @return true if the word is a global stop word or a stop word of the
+	 *         language
+	 */
+	public boolean isStopWord(String word, String lang) {
+		if (global.contains(word))
+			return true;
+		Set<String> stopLang = lang == null ? null : languages.get(lang);
+		return stopLang != null && stopLang.contains(word);
+	}
+
+	/**
+	 * Words of a search, excluded from the words of its tweets. Stop words are
+	 * never mixed with the words of a search.
+	 *
+	 * @param search twint search
+	 * @return immutable lower case words of the search
+	 */
+	public Set<String> searchWords(String search) {
+		if (search == null)
+			return Collections.emptySet();
+		Set<String> words = new HashSet<String>();
+		for (String word : search.replace("#", "").toLowerCase().split(" "))
+			if (!word.isEmpty())
+				words.add(word);
+		return Collections.unmodifiableSet(words);
+	}
+
+	/**
+	 * @return languages of the dictionary
+	 */
+	public Set<String> getLanguages() {
+		return languages.keySet();
+	}
+
+	/**
+	 * @param lang
+	 * @return immutable stop words of the language, glob for the global ones
+	 */
+	public Set<String> getStopWords(String lang) {
+		if (lang.equals(GLOBAL))
+			return global;
+		return languages.getOrDefault(lang, Collections.emptySet());
+	}
+}
@@ -0,0 +1,117 @@
+package com.afp.medialab.weverify.social.twint;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.annotation.PostConstruct;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Component;
+
+/**
+ * Split tweets into lower case words.
+ *
+ * Every line of regexp.txt describes text that separates words (urls,
+ * punctuation, emoji, spaces). The lines are compiled once into a single
+ * pattern and the tweet is scanned once: words are the text between two
+ * separators. Twittie entities are replaced by their normalized form from
+ * their offsets, without any regular expression.
+ *
+ * @author Medialab
+ */
+@Component
+public class TweetTokenizer {
+
+	private final Resource regexResource;
+
+	private Pattern separators;
+
+	public TweetTokenizer(@Value("classpath:regexp.txt") Resource regexResource) {
+		this.regexResource = regexResource;
+	}
+
+	@PostConstruct
+	public void compile() throws IOException {
+		StringBuilder pattern = new StringBuilder();
+		try (BufferedReader br = new BufferedReader(
+				new InputStreamReader(regexResource.getInputStream(), StandardCharsets.UTF_8))) {
+			String line;
+			while ((line = br.readLine()) != null) {
+				if (line.isEmpty())
+					continue;
+				if (pattern.length() > 0)
+					pattern.append('|');
+				pattern.append("(?:").append(line).append(')');
+			}
+		}
+		separators = Pattern.compile(pattern.toString());
+	}
+
+	/**
+	 * @param tweet    tweet text
+	 * @param entities Twittie entities of the tweet, may be empty
+	 * @return words of the tweet in lower case, an entity is a single word
+	 */
+	public List<String> tokenize(String tweet, List<Tweetie> entities) {
+		List<String> words = new ArrayList<String>();
+		Matcher matcher = separators.matcher(tweet);
+		int position = 0;
+		for (Tweetie entity : sorted(entities)) {
+			int start = entityStart(tweet, entity);
+			if (start < position || entity.getEnd() > tweet.length())
+				continue;
+			scan(tweet, matcher, position, start, words);
+			words.add(entity.getNormalized());
+			position = entity.getEnd();
+		}
+		scan(tweet, matcher, position, tweet.length(), words);
+		return words;
+	}
+
+	/**
+	 * Add the words of tweet[from, to[
+	 */
+	private void scan(String tweet, Matcher matcher, int from, int to, List<String> words) {
+		if (from >= to)
+			return;
+		matcher.region(from, to);
+		int wordStart = from;
+		while (matcher.find()) {
+			addWord(tweet, wordStart, matcher.start(), words);
+			wordStart = matcher.end();
+		}
+		addWord(tweet, wordStart, to, words);
+	}
+
+	private void addWord(String tweet, int start, int end, List<String> words) {
+		if (end > start)
+			words.add(tweet.substring(start, end).toLowerCase());
+	}
+
+	/**
+	 * A user annotation may not include its @
+	 */
+	private int entityStart(String tweet, Tweetie entity) {
+		int start = entity.getStart();
+		if (entity.getFeature().startsWith("@") && start > 0 && tweet.charAt(start) != '@'
+				&& tweet.charAt(start - 1) == '@')
+			start--;
+		return start;
+	}
+
+	private List<Tweetie> sorted(List<Tweetie> entities) {
+		if (entities.size() < 2)
+			return entities;
+		List<Tweetie> sorted = new ArrayList<Tweetie>(entities);
+		sorted.sort(Comparator.comparingInt(Tweetie::getStart));
+		return sorted;
+	}
+}
@@ -0,0 +1,47 @@
+package com.afp.medialab.weverify.social.twint;
+
+/**
+ * Entity detected by Twittie in a tweet
+ */
+public class Tweetie {
+	private String feature;
+	private String normalized;
+	private String entity;
+	private int start;
+	private int end;
+
+	/**
+	 * @param feature    detected text
+	 * @param normalized token replacing the detected text
+	 * @param entity     entity type
+	 * @param start      offset of the detected text in the tweet
+	 * @param end        end offset (exclusive)
+	 */
+	public Tweetie(String feature, String normalized, String entity, int start, int end) {
+		this.feature = feature;
+		this.normalized = normalized;
+		this.entity = entity;
+		this.start = start;
+		this.end = end;
+	}
+
+	public String getFeature() {
+		return feature;
+	}
+
+	public String getNormalized() {
+		return normalized;
+	}
+
+	public String getEntity() {
+		return entity;
+	}
+
+	public int getStart() {
+		return start;
+	}
+
+	public int getEnd() {
+		return end;
+	}
+}
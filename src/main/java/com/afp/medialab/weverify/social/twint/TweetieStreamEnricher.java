@@ -0,0 +1,144 @@
+package com.afp.medialab.weverify.social.twint;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.stereotype.Component;
+
+import com.afp.medialab.weverify.social.model.CollectRequest;
+
+/**
+ * Add Twittie data to the tweets of a slice while twint is still collecting
+ * it.
+ *
+ * Tweets indexed without wit field are polled at a fixed interval and enriched
+ * page by page on the enrich executor. Each poll flushes its updates and the
+ * index refresh interval is shorter than the poll interval, so tweets enriched
+ * by a poll are not fetched again by the next one. Once the scraping is done the
+ * index is refreshed and a last pass enriches the remaining tweets.
+ *
+ * @author Medialab
+ */
+@Component
+public class TweetieStreamEnricher {
+
+	private static final Logger Logger = LoggerFactory.getLogger(TweetieStreamEnricher.class);
+
+	private final ScheduledExecutorService poller = Executors.newSingleThreadScheduledExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "twintEnrichPoller");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	@Value("${application.twintcall.enrich-poll-seconds:10}")
+	private Long pollSeconds;
+
+	@Autowired
+	private ESOperations esOperation;
+
+	@Autowired
+	@Qualifier("twintEnrichTaskExecutor")
+	private TaskExecutor enrichExecutor;
+
+	/**
+	 * Prepare the enrichment of a slice, polling begins with
+	 * {@link SliceEnrichment#start()}
+	 *
+	 * @param session
+	 * @param collectRequest slice
+	 * @return
+	 */
+	public SliceEnrichment create(String session, CollectRequest collectRequest) {
+		return new SliceEnrichment(session, new CollectRequest(collectRequest));
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		poller.shutdownNow();
+	}
+
+	public class SliceEnrichment {
+
+		private final String session;
+		private final CollectRequest collectRequest;
+		private final CompletableFuture<Void> future = new CompletableFuture<Void>();
+
+		private boolean scraping = true;
+		private ScheduledFuture<?> next;
+
+		private SliceEnrichment(String session, CollectRequest collectRequest) {
+			this.session = session;
+			this.collectRequest = collectRequest;
+		}
+
+		/**
+		 * Start polling, called when twint starts
+		 */
+		public synchronized void start() {
+			if (scraping && next == null)
+				schedule(pollSeconds * 1000);
+		}
+
+		/**
+		 * Run the last pass as soon as possible
+		 *
+		 * @param scraped collected slice, its start may have moved if the remaining
+		 *                part was split again
+		 */
+		public synchronized void scrapingDone(CollectRequest scraped) {
+			scraping = false;
+			collectRequest.setFrom(scraped.getFrom());
+			// a running poll runs the last pass itself
+			if (next == null || next.cancel(false))
+				schedule(0);
+		}
+
+		/**
+		 * @return future completed once every tweet of the slice is enriched
+		 */
+		public CompletableFuture<Void> future() {
+			return future;
+		}
+
+		private void schedule(long delay) {
+			next = poller.schedule(() -> enrichExecutor.execute(this::poll), delay, TimeUnit.MILLISECONDS);
+		}
+
+		private void poll() {
+			boolean last;
+			synchronized (this) {
+				last = !scraping;
+			}
+			try {
+				// make the last tweets of twint visible, once by slice
+				if (last)
+					esOperation.refresh();
+				esOperation.enrichWithTweetie(collectRequest, session);
+				if (last) {
+					future.complete(null);
+					return;
+				}
+			} catch (Exception e) {
+				Logger.error("error with tweeetie", e);
+				if (last) {
+					future.complete(null);
+					return;
+				}
+			}
+			synchronized (this) {
+				schedule(scraping ? pollSeconds * 1000 : 0);
+			}
+		}
+	}
+}
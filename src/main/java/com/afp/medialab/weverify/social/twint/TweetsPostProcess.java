@@ -1,36 +1,22 @@
 package com.afp.medialab.weverify.social.twint;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.TreeMap;
-
-import javax.annotation.PostConstruct;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import org.apache.commons.lang3.StringUtils;
-import org.json.simple.parser.ParseException;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Qualifier;
-import org.springframework.beans.factory.annotation.Value;
-import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.core.io.Resource;
-import org.springframework.http.ResponseEntity;
-import org.springframework.http.client.SimpleClientHttpRequestFactory;
-import org.springframework.web.client.RestTemplate;
 
-import com.afp.medialab.weverify.social.model.twint.TwittieResponse;
+import com.afp.medialab.weverify.social.model.twint.TwintModel;
 import com.afp.medialab.weverify.social.model.twint.WordsInTweet;
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
 
 @Configuration
 /**
@@ -44,163 +30,87 @@ public class TweetsPostProcess {
 	private static org.slf4j.Logger Logger = LoggerFactory.getLogger(TweetsPostProcess.class);
 
 	@Autowired
-	@Qualifier("ESRestTempate")
-	private RestTemplate restTemplate;
-
-	@Value("${application.twittie.url}")
-	private String twitieURL;
-
-	private Map<String, List<String>> stopwords;
-	private List<String> regExps;
-
-	@Value("classpath:stopwords.json")
-	private Resource stopWordsResource;
-
-	@Value("classpath:regexp.txt")
-	private Resource regexResource;
-
-	private boolean twittieDown = false;
+	private TwittieClient twittieClient;
 
-	@SuppressWarnings("unchecked")
-	@PostConstruct
-	public void stopWordsFile() throws IOException {
-		ObjectMapper mapper = new ObjectMapper();
-		InputStream stopWords = stopWordsResource.getInputStream();
-		stopwords = mapper.readValue(stopWords, Map.class);
-		stopWords.close();
-	}
-
-	@PostConstruct
-	public void regExps() throws IOException {
-		InputStream regextinputstream = regexResource.getInputStream();
-		InputStreamReader reader = new InputStreamReader(regextinputstream);
-		regExps = new ArrayList<>();
-		BufferedReader br = new BufferedReader(reader);
-		String str;
-		while ((str = br.readLine()) != null)
-			regExps.add(str);
-		br.close();
-		regextinputstream.close();
-		reader.close();
-	}
-
-	private String getTweetLang(String tweet, String[] langs) {
-		Map<String, Float> percents = new TreeMap<>();
+	@Autowired
+	private DeferredEnrichmentQueue deferredEnrichment;
 
-		Arrays.stream(langs).forEach(lang -> {
-			percents.put(lang, 0f);
-			for (String stopword : stopwords.get(lang)) {
-				String word = stopword;
-				if (tweet.toLowerCase().contains(" " + word + " "))
-					percents.put(lang, percents.get(lang) + 1);
-			}
-			percents.put(lang, percents.get(lang) / (stopwords.get(lang)).size());
-		});
+	@Autowired
+	private TweetTokenizer tweetTokenizer;
 
-		return percents.entrySet().stream().max((entry1, entry2) -> entry1.getValue() > entry2.getValue() ? 1 : -1)
-				.get().getKey();
+	@Autowired
+	private StopWordsDictionary stopWords;
 
+	public List<WordsInTweet> buildWit(String tweet, String search) {
+		return buildWit(Collections.singletonList(tweet), Collections.singletonList(search), null).get(0);
 	}
 
 	/**
-	 * Call Tweetie Gate webservice
+	 * Build words in tweets, Twittie is called by batch for all the tweets.
+	 * Tweets processed without Twittie entities are deferred to be annotated
+	 * again later.
 	 * 
-	 * @return
-	 * @throws IOException
+	 * @param tms indexed tweets
+	 * @return words of each tweet, null for a tweet that could not be processed
 	 */
-	private List<Tweetie> callTwittie(String tweet) throws IOException {
-
-		// HTTPConnexion Timeout
-		ResponseEntity<String> response = null;
-		try {
-			response = restTemplate.postForEntity(twitieURL, tweet, String.class);
-
-		} catch (Exception e) {
-			Logger.error("FAILED CALLING TWITTIE");
-			twittieDown = true;
-			return null;
+	public List<List<WordsInTweet>> buildWit(List<TwintModel> tms) {
+		List<String> tweets = new ArrayList<>(tms.size());
+		List<String> searches = new ArrayList<>(tms.size());
+		List<String> ids = new ArrayList<>(tms.size());
+		for (TwintModel tm : tms) {
+			tweets.add(tm.getTweet());
+			searches.add(tm.getSearch());
+			ids.add(tm.getId());
 		}
-		// Logger.debug("SUCCESSFULLY CALLED TWITTIE");
-		ObjectMapper mapper = new ObjectMapper();
-
-		JsonNode root = mapper.readTree(response.getBody());
-		JsonNode annotations = root.get("response").get("annotations");
-
-		TwittieResponse twittieResponse = mapper.treeToValue(annotations, TwittieResponse.class);
-		List<Tweetie> tweeties = new LinkedList<Tweetie>();
-
-		twittieResponse.getPerson().forEach(p -> {
-			String per = p.getFeatures().getString();
-			String n_per = per.toLowerCase().replaceAll(" |/.", "_");
-			Tweetie tweetie = new Tweetie(per, n_per, "Person");
-			tweeties.add(tweetie);
-			// tweetTweetie = tweet.replaceAll(per, n_per);
-
-			// tokenJSON.put(n_per, "Person");
-		});
-		twittieResponse.getUserID().forEach(p -> {
-			String feat = "@" + p.getFeatures().getString();
-			// String norm = p.getFeatures().getString().toLowerCase().replaceAll("@", "");
-			String norm = "@" + p.getFeatures().getString().toLowerCase();
-			// tweet = tweet.replaceAll(p.getFeatures().getString(),
-			// p.getFeatures().getString().toLowerCase().replaceAll("@", ""));
-			Tweetie tweetie = new Tweetie(feat, norm, "UserID");
-			tweeties.add(tweetie);
-			// tokenJSON.put("@" + p.getFeatures().getString().toLowerCase(), "UserID");
-		});
-		twittieResponse.getLocation().forEach(p -> {
-			String per = p.getFeatures().getString();
-			String n_per = per.toLowerCase().replaceAll(" |/.", "_");
-			Tweetie tweetie = new Tweetie(per, n_per, "Location");
-			tweeties.add(tweetie);
-			// tweet = tweet.replaceAll(per, n_per);
-			// tokenJSON.put(n_per, "Location");
-		});
-		twittieResponse.getOrganization().forEach(p -> {
-			String per = p.getFeatures().getString();
-			String n_per = per.toLowerCase().replaceAll(" |/.", "_");
-			Tweetie tweetie = new Tweetie(per, n_per, "Organization");
-			tweeties.add(tweetie);
-			// tweet = tweet.replaceAll(per, n_per);
-			// tokenJSON.put(n_per, "Organization");
-		});
-
-		return tweeties;
+		return buildWit(tweets, searches, ids);
 	}
 
-	public List<WordsInTweet> buildWit(String tweet, String search)
-			throws InterruptedException, ParseException, IOException {
+	private List<List<WordsInTweet>> buildWit(List<String> tweets, List<String> searches, List<String> ids) {
+		List<String> normalizedTweets = new ArrayList<>(tweets.size());
+		for (String tweet : tweets)
+			normalizedTweets.add(StringUtils.normalizeSpace(tweet));
 
-		tweet = StringUtils.normalizeSpace(tweet);
-		List<Tweetie> tweeties;
-		Map<String, String> tokenJSON = new HashMap<>();
-		if (!twittieDown) {
-			tweeties = callTwittie(tweet);
-			for (Tweetie tweetie : tweeties) {
-				tweet = tweet.replaceAll(tweetie.getFeature(), tweetie.getNormalized());
-				tokenJSON.put(tweetie.getNormalized(), tweetie.getEntity());
-			}
+		List<List<Tweetie>> tweeties = null;
+		try {
+			tweeties = twittieClient.annotate(normalizedTweets);
+		} catch (IOException e) {
+			Logger.error("FAILED CALLING TWITTIE: {}", e.getMessage());
+			if (ids != null)
+				deferredEnrichment.defer(ids);
 		}
 
-		String[] langs = new String[] { "fr", "en" };
+		// search words are computed once for all the tweets of a search
+		Map<String, Set<String>> exclusions = new HashMap<>();
+		for (String search : searches)
+			exclusions.computeIfAbsent(search, stopWords::searchWords);
+
+		// words are counted on all cores, order is kept
+		List<List<Tweetie>> annotations = tweeties;
+		return IntStream.range(0, normalizedTweets.size()).parallel().mapToObj(i -> {
+			try {
+				List<Tweetie> tweetTweeties = annotations == null ? Collections.emptyList() : annotations.get(i);
+				return buildWit(normalizedTweets.get(i), exclusions.get(searches.get(i)), tweetTweeties);
+			} catch (RuntimeException e) {
+				Logger.error("Error processing tweet {}: {}", i, e.getMessage());
+				return null;
+			}
+		}).collect(Collectors.toList());
+	}
 
-		List<String> stopLang = stopwords.get(getTweetLang(tweet, langs));
-		List<String> stopGlob = stopwords.get("glob");
+	private List<WordsInTweet> buildWit(String tweet, Set<String> searchWords, List<Tweetie> tweeties) {
 
-		stopGlob.addAll(Arrays.asList(search.replaceAll("#", "").split(" ")));
-		// String tweet = tm.getTweet();
+		Map<String, String> tokenJSON = new HashMap<>();
+		for (Tweetie tweetie : tweeties)
+			tokenJSON.put(tweetie.getNormalized(), tweetie.getEntity());
 
-		for (String regExp : regExps) {
-			tweet = tweet.replaceAll(regExp, " ");
-		}
-		tweet = StringUtils.normalizeSpace(tweet);
-		List<String> words = Arrays.asList(tweet.toLowerCase().split("\\s+"));
+		List<String> words = tweetTokenizer.tokenize(tweet, tweeties);
+		String lang = stopWords.guessLanguage(words);
 
 		Map<String, Integer> occurences = new HashMap<>();
 
 		words.stream().forEach((word) -> {
 
-			if (!stopLang.contains(word) && !stopGlob.contains(word) && !word.equals(" "))
+			if (!stopWords.isStopWord(word, lang) && !searchWords.contains(word))
 				if (occurences.get(word) == null)
 					occurences.put(word, 1);
 				else
@@ -220,39 +130,4 @@ public class TweetsPostProcess {
 
 		return wit;
 	}
-
-	@Bean
-	public RestTemplate restTemplate() {
-		SimpleClientHttpRequestFactory clientHttpRequestFactory = new SimpleClientHttpRequestFactory();
-		// Connect timeout
-		clientHttpRequestFactory.setConnectTimeout(5_000);
-
-		// Read timeout
-		clientHttpRequestFactory.setReadTimeout(10_000);
-		return new RestTemplate(clientHttpRequestFactory);
-	}
-}
-
-class Tweetie {
-	private String feature;
-	private String normalized;
-	private String entity;
-
-	public Tweetie(String feature, String normalized, String entity) {
-		this.feature = feature;
-		this.normalized = normalized;
-		this.entity = entity;
-	}
-
-	public String getFeature() {
-		return feature;
-	}
-
-	public String getNormalized() {
-		return normalized;
-	}
-
-	public String getEntity() {
-		return entity;
-	}
 }
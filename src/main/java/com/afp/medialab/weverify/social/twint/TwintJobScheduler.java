@@ -0,0 +1,176 @@
+package com.afp.medialab.weverify.social.twint;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Run twint jobs with a bounded number of external processes.
+ *
+ * Every time slice is a job queued by session. A free worker always takes the
+ * next job of the session having the fewest running jobs, in round robin order
+ * between equal sessions, so a big collect cannot starve small ones. The number
+ * of running jobs is capped globally and by session. Submitting a job never
+ * blocks: callers get a future completed when the job ends.
+ *
+ * @author Medialab
+ */
+@Component
+public class TwintJobScheduler {
+
+	private static final Logger Logger = LoggerFactory.getLogger(TwintJobScheduler.class);
+
+	private final int maxProcesses;
+	private final int maxProcessesBySession;
+
+	/**
+	 * Pending jobs by session, iteration order is the round robin order
+	 */
+	private final LinkedHashMap<String, Deque<Job<?>>> pending = new LinkedHashMap<>();
+	private final Map<String, Integer> runningBySession = new HashMap<>();
+	private int running = 0;
+
+	private final ThreadPoolExecutor workers;
+
+	public TwintJobScheduler(@Value("${application.twintcall.max-processes}") int maxProcesses,
+			@Value("${application.twintcall.max-processes-by-session}") int maxProcessesBySession) {
+		this.maxProcesses = maxProcesses;
+		this.maxProcessesBySession = maxProcessesBySession;
+		AtomicInteger threadCounter = new AtomicInteger();
+		// never more than maxProcesses jobs are handed to the pool, so the queue stays
+		// empty
+		this.workers = new ThreadPoolExecutor(maxProcesses, maxProcesses, 60, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<Runnable>(),
+				runnable -> new Thread(runnable, "twint-" + threadCounter.incrementAndGet()));
+		this.workers.allowCoreThreadTimeOut(true);
+	}
+
+	/**
+	 * Queue a job of a collect session
+	 *
+	 * @param session collect session
+	 * @param job
+	 * @return future completed with the job result
+	 */
+	public <T> CompletableFuture<T> submit(String session, Supplier<T> job) {
+		Job<T> queued = new Job<T>(session, job);
+		synchronized (this) {
+			pending.computeIfAbsent(session, s -> new ArrayDeque<Job<?>>()).add(queued);
+		}
+		dispatch();
+		return queued.future;
+	}
+
+	/**
+	 * @return number of jobs waiting for a free process
+	 */
+	public synchronized int getPendingJobs() {
+		int nbPending = 0;
+		for (Deque<Job<?>> jobs : pending.values())
+			nbPending += jobs.size();
+		return nbPending;
+	}
+
+	/**
+	 * @return number of running jobs
+	 */
+	public synchronized int getRunningJobs() {
+		return running;
+	}
+
+	/**
+	 * Hand jobs to the workers while processes are available
+	 */
+	private void dispatch() {
+		Job<?> job;
+		while ((job = next()) != null) {
+			Job<?> started = job;
+			try {
+				workers.execute(() -> run(started));
+			} catch (RuntimeException e) {
+				Logger.error("Unable to start twint job: {}", e.getMessage());
+				finished(started);
+				started.future.completeExceptionally(e);
+			}
+		}
+	}
+
+	private synchronized Job<?> next() {
+		if (running >= maxProcesses)
+			return null;
+		String selected = null;
+		int selectedRunning = Integer.MAX_VALUE;
+		for (String session : pending.keySet()) {
+			int sessionRunning = runningBySession.getOrDefault(session, 0);
+			if (sessionRunning < maxProcessesBySession && sessionRunning < selectedRunning) {
+				selected = session;
+				selectedRunning = sessionRunning;
+			}
+		}
+		if (selected == null)
+			return null;
+		Deque<Job<?>> jobs = pending.remove(selected);
+		Job<?> job = jobs.poll();
+		// the session goes to the end of the round robin
+		if (!jobs.isEmpty())
+			pending.put(selected, jobs);
+		running++;
+		runningBySession.merge(selected, 1, Integer::sum);
+		return job;
+	}
+
+	private synchronized void finished(Job<?> job) {
+		running--;
+		runningBySession.computeIfPresent(job.session, (session, nb) -> nb > 1 ? nb - 1 : null);
+	}
+
+	private <T> void run(Job<T> job) {
+		T result = null;
+		Throwable error = null;
+		try {
+			result = job.task.get();
+		} catch (Throwable e) {
+			Logger.error("twint job of session {} failed", job.session, e);
+			error = e;
+		}
+		finished(job);
+		// the released process goes to the next pending job before the callers
+		// continue
+		dispatch();
+		if (error == null)
+			job.future.complete(result);
+		else
+			job.future.completeExceptionally(error);
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		workers.shutdownNow();
+	}
+
+	private static class Job<T> {
+		private final String session;
+		private final Supplier<T> task;
+		private final CompletableFuture<T> future = new CompletableFuture<T>();
+
+		Job(String session, Supplier<T> task) {
+			this.session = session;
+			this.task = task;
+		}
+	}
+}
@@ -0,0 +1,239 @@
+package com.afp.medialab.weverify.social.twint;
+
+import java.io.BufferedReader;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Consume the outputs of a running twint process.
+ *
+ * stderr is drained by a dedicated daemon thread while stdout is parsed line by
+ * line on the calling thread, so none of the pipe buffers can fill up and stall
+ * the process. Collected tweets are reported to a {@link ProgressListener}
+ * while the process runs.
+ *
+ * @author Medialab
+ */
+public class TwintProcessReader {
+
+	private static final Logger Logger = LoggerFactory.getLogger(TwintProcessReader.class);
+
+	private static final String COLLECTED = "Successfully collected ";
+
+	/**
+	 * twint tweet output: "{id} {yyyy-MM-dd} {HH:mm:ss} {tz} <{username}> {tweet}"
+	 */
+	private static final Pattern TWEET_LINE = Pattern.compile("^\\d{6,} \\d{4}-\\d{2}-\\d{2} ");
+
+	private static final AtomicInteger drainCounter = new AtomicInteger();
+
+	private static final ScheduledExecutorService watchdog = Executors.newSingleThreadScheduledExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "twint-watchdog");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	/**
+	 * Receive the number of tweets collected and of bytes read on stdout since the
+	 * last call.
+	 */
+	@FunctionalInterface
+	public interface ProgressListener {
+		void onProgress(int nbNewTweets, long nbNewBytes);
+	}
+
+	private final Process process;
+	private final String got;
+	private final ProgressListener listener;
+	private final long progressInterval;
+	private final long maxDuration;
+	private volatile boolean timedOut = false;
+
+	private int nbLines = 0;
+	private int nbReported = 0;
+	private long nbBytes = 0;
+	private long nbBytesReported = 0;
+	private long lastReport = 0;
+
+	/**
+	 * @param process          started twint process
+	 * @param got              label used in logs
+	 * @param listener         live progress listener, may be null
+	 * @param progressInterval minimum delay in ms between two progress reports
+	 */
+	public TwintProcessReader(Process process, String got, ProgressListener listener, long progressInterval) {
+		this(process, got, listener, progressInterval, 0);
+	}
+
+	/**
+	 * @param process          started twint process
+	 * @param got              label used in logs
+	 * @param listener         live progress listener, may be null
+	 * @param progressInterval minimum delay in ms between two progress reports
+	 * @param maxDuration      delay in ms after which the process is stopped, 0 to
+	 *                         never stop it
+	 */
+	public TwintProcessReader(Process process, String got, ProgressListener listener, long progressInterval,
+			long maxDuration) {
+		this.process = process;
+		this.got = got;
+		this.listener = listener;
+		this.progressInterval = progressInterval;
+		this.maxDuration = maxDuration;
+	}
+
+	/**
+	 * Read both process streams until the end of stdout.
+	 *
+	 * @return number of tweets reported by twint, number of tweets printed before
+	 *         the process was stopped or -1 if twint did not report any result or
+	 *         was stopped before printing any tweet
+	 * @throws IOException
+	 */
+	public Integer read() throws IOException {
+		Thread stdErrorDrain = drain(process.getErrorStream());
+		ScheduledFuture<?> stop = null;
+		if (maxDuration > 0)
+			stop = watchdog.schedule(this::stop, maxDuration, TimeUnit.MILLISECONDS);
+		Integer nb_tweets = -1;
+		try (BufferedReader stdInput = new BufferedReader(
+				new InputStreamReader(new CountingInputStream(process.getInputStream()), StandardCharsets.UTF_8))) {
+			String line;
+			lastReport = System.currentTimeMillis();
+			while ((line = stdInput.readLine()) != null) {
+				Integer collected = parseCollected(line);
+				if (collected != null) {
+					nb_tweets = collected;
+					Logger.info("Successfully collected: " + nb_tweets + " " + got);
+				} else if (isTweetLine(line)) {
+					nbLines++;
+					reportProgress(false);
+				}
+			}
+			reportProgress(true);
+		} finally {
+			if (stop != null)
+				stop.cancel(false);
+			try {
+				stdErrorDrain.join(1000);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		if (timedOut)
+			return nbLines > 0 ? nbLines : -1;
+		return nb_tweets;
+	}
+
+	/**
+	 * @return true if the process has been stopped because it was running for too
+	 *         long
+	 */
+	public boolean isTimedOut() {
+		return timedOut;
+	}
+
+	private void stop() {
+		Logger.warn("twint is running for more than {} ms, stopping it", maxDuration);
+		timedOut = true;
+		process.destroy();
+	}
+
+	private void reportProgress(boolean force) {
+		if (listener == null || (nbLines == nbReported && nbBytes == nbBytesReported))
+			return;
+		long now = System.currentTimeMillis();
+		if (force || now - lastReport >= progressInterval) {
+			int delta = nbLines - nbReported;
+			long bytesDelta = nbBytes - nbBytesReported;
+			nbReported = nbLines;
+			nbBytesReported = nbBytes;
+			lastReport = now;
+			try {
+				listener.onProgress(delta, bytesDelta);
+			} catch (RuntimeException e) {
+				Logger.error("Error reporting twint progress: {}", e.getMessage());
+			}
+		}
+	}
+
+	private Thread drain(InputStream errorStream) {
+		Thread thread = new Thread(() -> {
+			try (BufferedReader stdError = new BufferedReader(
+					new InputStreamReader(errorStream, StandardCharsets.UTF_8))) {
+				String line;
+				while ((line = stdError.readLine()) != null)
+					Logger.error(line);
+			} catch (IOException e) {
+				Logger.error("Error reading twint error stream: {}", e.getMessage());
+			}
+		}, "twint-stderr-" + drainCounter.incrementAndGet());
+		thread.setDaemon(true);
+		thread.start();
+		return thread;
+	}
+
+	/**
+	 * Extract the final tweets count from twint output
+	 *
+	 * @param line
+	 * @return number of collected tweets or null if the line is not a count line
+	 */
+	public static Integer parseCollected(String line) {
+		int index = line.indexOf(COLLECTED);
+		if (index < 0)
+			return null;
+		String[] words = line.substring(index + COLLECTED.length()).split(" ");
+		String str = words[0];
+		if (str.equals("all") && words.length > 1)
+			str = words[1];
+		try {
+			return Integer.parseInt(str);
+		} catch (NumberFormatException e) {
+			Logger.warn("Unexpected twint count line: {}", line);
+			return null;
+		}
+	}
+
+	public static boolean isTweetLine(String line) {
+		return TWEET_LINE.matcher(line).find();
+	}
+
+	/**
+	 * Count bytes read on stdout, only used by the reading thread
+	 */
+	private class CountingInputStream extends FilterInputStream {
+
+		CountingInputStream(InputStream in) {
+			super(in);
+		}
+
+		@Override
+		public int read() throws IOException {
+			int b = super.read();
+			if (b >= 0)
+				nbBytes++;
+			return b;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			int n = super.read(b, off, len);
+			if (n > 0)
+				nbBytes += n;
+			return n;
+		}
+	}
+}
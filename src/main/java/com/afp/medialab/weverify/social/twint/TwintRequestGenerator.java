@@ -47,7 +47,8 @@ public class TwintRequestGenerator {
     public String generateRequest(CollectRequest cr, String id, boolean isDocker, String esURL) {
         SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
         boolean hasUser = false;
-        String call = "twint -ho --count ";
+        // tweets are printed on stdout to follow the collect progress
+        String call = "twint --count ";
 
         call += "-s '" + generateSearch(cr) + "'";
 
@@ -0,0 +1,241 @@
+package com.afp.medialab.weverify.social.twint;
+
+import static java.lang.Math.toIntExact;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.afp.medialab.weverify.social.dao.service.CollectService;
+import com.afp.medialab.weverify.social.model.CollectRequest;
+
+/**
+ * Split a collect request into time slices of roughly the same expected
+ * volume.
+ *
+ * The expected volume of a time bucket is the number of tweets already indexed
+ * for this search, or the historic tweet rate of the same keywords when nothing
+ * is indexed yet. Requests without any known density are split into equal
+ * slices.
+ *
+ * @author Medialab
+ */
+@Component
+public class TwintRequestSplitter {
+
+	private static Logger Logger = LoggerFactory.getLogger(TwintRequestSplitter.class);
+
+	private static final long DAY = 86400000L;
+	private static final long MIN_BUCKET = 3600000L;
+	private static final long MIN_SLICE = 60000L;
+	private static final int BUCKETS_BY_SLICE = 8;
+	/**
+	 * Buckets without any known volume still weight this part of the mean bucket
+	 * volume, so that a slice never spans an unbounded quiet period.
+	 */
+	private static final double EMPTY_BUCKET_WEIGHT = 0.05;
+
+	@Value("${application.twintcall.twint_request_maximum_days}")
+	private Long days_limit;
+
+	@Value("${application.twintcall.twint_big_request_subdivisions}")
+	private Long subdivisions;
+
+	@Value("${application.twintcall.twint_slice_min_tweets:2000}")
+	private Long minTweetsBySlice;
+
+	@Autowired
+	private ESOperations esOperation;
+
+	@Autowired
+	private CollectService collectService;
+
+	/**
+	 * Split requests longer than twint_request_maximum_days
+	 *
+	 * @param collectRequest
+	 * @return
+	 */
+	public List<CollectRequest> split(CollectRequest collectRequest) {
+		long request_duration = collectRequest.getUntil().getTime() - collectRequest.getFrom().getTime();
+		if (request_duration < days_limit * DAY) {
+			List<CollectRequest> collectRequestList = new ArrayList<>();
+			collectRequestList.add(collectRequest);
+			return collectRequestList;
+		}
+		return split(collectRequest, subdivisions.intValue(), true);
+	}
+
+	/**
+	 * Split again a slice that could not be collected in time
+	 *
+	 * @param collectRequest remaining part of the slice
+	 * @param nbSlices
+	 * @return
+	 */
+	public List<CollectRequest> resplit(CollectRequest collectRequest, int nbSlices) {
+		return split(collectRequest, nbSlices, false);
+	}
+
+	private List<CollectRequest> split(CollectRequest collectRequest, int maxSlices, boolean adaptSlicesNumber) {
+		long from = collectRequest.getFrom().getTime();
+		long until = collectRequest.getUntil().getTime();
+		long bucketSize = Math.max(MIN_BUCKET, (until - from) / (maxSlices * BUCKETS_BY_SLICE));
+		double[] volumes = expectedVolumes(collectRequest, from, until, bucketSize);
+		if (volumes == null) {
+			Logger.debug("No tweet density known, split in {} equal slices", maxSlices);
+			return equalSlices(collectRequest, maxSlices);
+		}
+		double total = 0;
+		for (double volume : volumes)
+			total += volume;
+		int nbSlices = maxSlices;
+		if (adaptSlicesNumber)
+			nbSlices = (int) Math.max(1, Math.min(maxSlices, Math.round(total / minTweetsBySlice)));
+		Logger.debug("Expected {} tweets, split in {} slices", Math.round(total), nbSlices);
+		return volumeSlices(collectRequest, volumes, bucketSize, total, nbSlices);
+	}
+
+	/**
+	 * Expected tweets by bucket, buckets are aligned on elasticsearch histogram
+	 * keys and clipped to the request range.
+	 *
+	 * @return volumes or null if no density is known
+	 */
+	private double[] expectedVolumes(CollectRequest collectRequest, long from, long until, long bucketSize) {
+		long gridStart = from - Math.floorMod(from, bucketSize);
+		int nbBuckets = (int) ((until - gridStart + bucketSize - 1) / bucketSize);
+		double[] volumes = new double[nbBuckets];
+		boolean known = false;
+
+		try {
+			SortedMap<Long, Long> histogram = esOperation.tweetsHistogram(collectRequest, bucketSize);
+			for (Map.Entry<Long, Long> bucket : histogram.entrySet()) {
+				int index = (int) ((bucket.getKey() - gridStart) / bucketSize);
+				if (index >= 0 && index < nbBuckets && bucket.getValue() > 0) {
+					volumes[index] += bucket.getValue();
+					known = true;
+				}
+			}
+		} catch (RuntimeException e) {
+			Logger.error("Unable to get tweets density: {}", e.getMessage());
+		}
+
+		Double rate = collectService.historicTweetRate(collectRequest);
+		double sum = 0;
+		for (int i = 0; i < nbBuckets; i++) {
+			if (volumes[i] == 0 && rate != null)
+				volumes[i] = rate * bucketLength(i, gridStart, from, until, bucketSize);
+			sum += volumes[i];
+		}
+		if (!known && (rate == null || sum <= 0))
+			return null;
+
+		double floor = EMPTY_BUCKET_WEIGHT * sum / nbBuckets;
+		for (int i = 0; i < nbBuckets; i++)
+			volumes[i] = Math.max(volumes[i], floor * bucketLength(i, gridStart, from, until, bucketSize) / bucketSize);
+		return volumes;
+	}
+
+	private long bucketLength(int index, long gridStart, long from, long until, long bucketSize) {
+		long start = Math.max(from, gridStart + index * bucketSize);
+		long end = Math.min(until, gridStart + (index + 1) * bucketSize);
+		return Math.max(0, end - start);
+	}
+
+	/**
+	 * Cut the request where the cumulated expected volume reaches each multiple of
+	 * total / nbSlices.
+	 */
+	private List<CollectRequest> volumeSlices(CollectRequest collectRequest, double[] volumes, long bucketSize,
+			double total, int nbSlices) {
+		long from = collectRequest.getFrom().getTime();
+		long until = collectRequest.getUntil().getTime();
+		long gridStart = from - Math.floorMod(from, bucketSize);
+
+		List<Long> cuts = new ArrayList<Long>();
+		double target = total / nbSlices;
+		double cumulated = 0;
+		int k = 1;
+		for (int i = 0; i < volumes.length && k < nbSlices; i++) {
+			long start = Math.max(from, gridStart + i * bucketSize);
+			long length = bucketLength(i, gridStart, from, until, bucketSize);
+			while (k < nbSlices && volumes[i] > 0 && cumulated + volumes[i] >= k * target) {
+				long cut = start + (long) ((k * target - cumulated) / volumes[i] * length);
+				// twint dates are precise to the second
+				cut -= cut % 1000;
+				long previous = cuts.isEmpty() ? from : cuts.get(cuts.size() - 1);
+				if (cut - previous >= MIN_SLICE && until - cut >= MIN_SLICE)
+					cuts.add(cut);
+				k++;
+			}
+			cumulated += volumes[i];
+		}
+
+		List<CollectRequest> collectRequestList = new ArrayList<>();
+		long sliceFrom = from;
+		cuts.add(until);
+		for (Long cut : cuts) {
+			CollectRequest slice = new CollectRequest(collectRequest);
+			slice.setFrom(new Date(sliceFrom));
+			slice.setUntil(new Date(cut));
+			collectRequestList.add(slice);
+			sliceFrom = cut;
+		}
+		return collectRequestList;
+	}
+
+	private Date addDuration(Date date, Duration duration) {
+		Calendar calendar = Calendar.getInstance();
+		calendar.setTime(date);
+		calendar.add(Calendar.MINUTE, toIntExact(duration.toMinutes()));
+		return calendar.getTime();
+	}
+
+	private List<CollectRequest> equalSlices(CollectRequest collectRequest, long nbSlices) {
+
+		List<CollectRequest> collectRequestList = new ArrayList<>();
+		Long request_duration = collectRequest.getUntil().getTime() - collectRequest.getFrom().getTime();
+
+		Duration interval_size = Duration.ofSeconds(request_duration / nbSlices / 1000);
+		Date new_from_date = collectRequest.getFrom();
+		Date final_until = collectRequest.getUntil();
+		Date new_until_date = addDuration(new_from_date, interval_size);
+		if (interval_size.toMinutes() < 1) {
+			collectRequestList.add(collectRequest);
+			return collectRequestList;
+		}
+
+		/* while from < until */
+		while (new_until_date.compareTo(final_until) < 0) {
+			CollectRequest new_collectRequest = new CollectRequest(collectRequest);
+			new_collectRequest.setFrom(new_from_date);
+			new_collectRequest.setUntil(new_until_date);
+			collectRequestList.add(new_collectRequest);
+			new_from_date = new_until_date;
+			new_until_date = addDuration(new_from_date, interval_size);
+		}
+		if (collectRequestList.isEmpty()) {
+			collectRequestList.add(collectRequest);
+			return collectRequestList;
+		}
+		/* if stopped early replace the last date by final_until */
+		if (new_from_date.compareTo(final_until) < 0) {
+			CollectRequest new_collectRequest = new CollectRequest(
+					(CollectRequest) collectRequestList.get(collectRequestList.size() - 1));
+			new_collectRequest.setUntil(final_until);
+			collectRequestList.set(collectRequestList.size() - 1, new_collectRequest);
+		}
+		return collectRequestList;
+	}
+}
@@ -0,0 +1,68 @@
+package com.afp.medialab.weverify.social.twint;
+
+import com.afp.medialab.weverify.social.model.CollectRequest;
+
+/**
+ * Outcome of the scraping of a time slice
+ *
+ * @author Medialab
+ */
+public class TwintSliceResult {
+
+	private final CollectRequest request;
+	private Integer count = -1;
+	private int scraped = 0;
+	private CollectRequest remaining;
+	private int remainingSubdivisions;
+
+	public TwintSliceResult(CollectRequest request) {
+		this.request = request;
+	}
+
+	/**
+	 * @return collected slice, reduced to the collected part when twint was
+	 *         stopped
+	 */
+	public CollectRequest getRequest() {
+		return request;
+	}
+
+	/**
+	 * @return number of collected tweets or -1 on error
+	 */
+	public Integer getCount() {
+		return count;
+	}
+
+	public void setCount(Integer count) {
+		this.count = count;
+	}
+
+	/**
+	 * @return number of tweets already added to the collect count while twint was
+	 *         running
+	 */
+	public int getScraped() {
+		return scraped;
+	}
+
+	public void addScraped(int nbTweets) {
+		scraped += nbTweets;
+	}
+
+	/**
+	 * @return part of the slice to split again or null
+	 */
+	public CollectRequest getRemaining() {
+		return remaining;
+	}
+
+	public int getRemainingSubdivisions() {
+		return remainingSubdivisions;
+	}
+
+	public void setRemaining(CollectRequest remaining, int remainingSubdivisions) {
+		this.remaining = remaining;
+		this.remainingSubdivisions = remainingSubdivisions;
+	}
+}
@@ -1,29 +1,22 @@
 package com.afp.medialab.weverify.social.twint;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.util.Calendar;
 import java.util.Date;
-import java.util.List;
-import java.util.concurrent.CompletableFuture;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Component;
-import org.springframework.transaction.annotation.Transactional;
 
 import com.afp.medialab.weverify.social.dao.entity.CollectHistory;
 import com.afp.medialab.weverify.social.dao.service.CollectService;
 import com.afp.medialab.weverify.social.model.CollectRequest;
 import com.afp.medialab.weverify.social.model.Status;
-import com.afp.medialab.weverify.social.model.twint.TwintModel;
 
 /**
- * Run twint command in a asynchronous thread
+ * Run twint command for a time slice
  *
  * @author Medialab
  */
@@ -32,6 +25,16 @@ public class TwintThread {
 
 	private static final Logger Logger = LoggerFactory.getLogger(TwintThread.class);
 
+	/**
+	 * Minimum delay between two live count updates of a collect
+	 */
+	private static final long PROGRESS_INTERVAL = 5000;
+
+	/**
+	 * Remaining ranges shorter than this are collected again as a single slice
+	 */
+	private static final long MIN_RESPLIT_DURATION = 2 * 3600000L;
+
 	@Value("${command.twint}")
 	private String twintCall;
 
@@ -41,12 +44,21 @@ public class TwintThread {
 	@Value("${application.twintcall.twint_thread_nb_restart_on_error}")
 	private Long restart_time;
 
+	@Value("${application.twintcall.twint_slice_max_minutes:0}")
+	private Long sliceMaxMinutes;
+
+	@Value("${application.twintcall.twint_slice_resplit_subdivisions:2}")
+	private Integer resplitSubdivisions;
+
 	@Autowired
-	private ESOperations esOperation;
+	private ResumeCheckpointService checkpoints;
 
 	@Autowired
 	CollectService collectService;
 
+	@Autowired
+	private SessionProgressRegistry progressRegistry;
+
 	// private SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd
 	// HH:mm:ss");
 
@@ -59,59 +71,85 @@ public class TwintThread {
 			return false;
 	}
 
-	@Async(value = "twintCallTaskExecutor")
-	@Transactional
-	public CompletableFuture<Integer> callTwint(CollectHistory collectHistory, CollectRequest request) {
+	/**
+	 * Scrape a time slice, run by {@link TwintJobScheduler}
+	 *
+	 * @param collectHistory
+	 * @param request
+	 * @return number of collected tweets and the part of the slice left to
+	 *         another split
+	 */
+	public TwintSliceResult scrape(CollectHistory collectHistory, CollectRequest request) {
 
-		Integer result = null;
+		Integer result = -1;
+		SessionProgress progress = progressRegistry.register(collectHistory);
+		TwintSliceResult sliceResult = new TwintSliceResult(request);
+		// the range of the slice moves while it is scraped
+		CollectRequest slice = new CollectRequest(request);
 		try {
-			result = callProcessUntilSuccess(request, collectHistory.getSession());
+			result = callProcessUntilSuccess(sliceResult, progress);
 		} catch (IOException e) {
 			e.printStackTrace();
 			Logger.error("Error calling twint process", e);
+		} finally {
+			checkpoints.forget(slice);
 		}
-		if (result > 0) {
-			try {
-				Thread.sleep(2000);
-				List<TwintModel> tms = esOperation.enrichWithTweetie(request);
-				esOperation.indexWordsObj(tms);
-			} catch (IOException | InterruptedException e) {
-				Logger.error("error with tweeetie", e);
-			}
-		}
-		// update db to say this thread is finished
-		collectHistory.setFinished_threads(collectHistory.getFinished_threads() + 1);
-		Integer old_count = collectHistory.getCount();
-		if (old_count == null || old_count == -1)
-			collectHistory.setCount(result);
-		else
-			collectHistory.setCount(result + old_count);
-		collectService.save_collectHistory(collectHistory);
+		sliceResult.setCount(result);
+		return sliceResult;
+	}
 
-		if (result != -1) {
-			collectHistory.setSuccessful_threads(collectHistory.getSuccessful_threads() + 1);
-			collectService.save_collectHistory(collectHistory);
+	/**
+	 * Count a finished slice with a single database update
+	 *
+	 * @param collectHistory
+	 * @param sliceResult
+	 * @return true if this was the last running slice of the session
+	 */
+	public boolean sliceDone(CollectHistory collectHistory, TwintSliceResult sliceResult) {
+		SessionProgress progress = progressRegistry.register(collectHistory);
+		boolean successful = sliceResult.getCount() != -1;
+		// twint final count may include tweets that were not printed
+		int nbNewTweets = Math.max(0, sliceResult.getCount() - sliceResult.getScraped());
+		boolean last = progress.subRangeDone(successful);
+		try {
+			collectService.collectThreadFinished(collectHistory.getSession(), successful, nbNewTweets);
+		} catch (RuntimeException e) {
+			Logger.error("Unable to save finished thread of session {}: {}", collectHistory.getSession(),
+					e.getMessage());
 		}
+		Logger.debug("FINISH THREAD {}, SUCCCESS {}, TOTAL THREAD {}", progress.getFinishedThreads(),
+				progress.getSuccessfulThreads(), progress.getTotalThreads());
+		return last;
+	}
 
-		int finished_threads = collectHistory.getFinished_threads();
-		int successful_threads = collectHistory.getSuccessful_threads();
-		int total_threads = collectHistory.getTotal_threads();
-		Logger.debug("FINISH THREAD {}, SUCCCESS {}, TOTAL THREAD {}", finished_threads, successful_threads,
-				total_threads);
-		if (finished_threads == total_threads) {
-
-			collectHistory.setStatus(Status.Done);
-			collectHistory.setProcessEnd(Calendar.getInstance().getTime());
-			if (successful_threads == finished_threads) {
-				collectHistory.setMessage("Finished successfully");
-			} else {
-				collectHistory.setStatus(Status.Error);
-				collectHistory.setMessage("Parts of this search could not be found");
-			}
-			collectService.save_collectHistory(collectHistory);
+	/**
+	 * Save the final status once every slice of the session is finished
+	 *
+	 * @param collectHistory
+	 */
+	public void finalizeSession(CollectHistory collectHistory) {
+		SessionProgress progress = progressRegistry.register(collectHistory);
+		int finished_threads = progress.getFinishedThreads();
+		int successful_threads = progress.getSuccessfulThreads();
+
+		Status status = Status.Done;
+		String message = "Finished successfully";
+		if (successful_threads != finished_threads) {
+			status = Status.Error;
+			message = "Parts of this search could not be found";
 		}
-//		}
-		return CompletableFuture.completedFuture(result);
+		collectService.finishCollect(collectHistory.getSession(), status, message);
+
+		// keep the entity in line with the database for a later run of the session
+		collectHistory.setFinished_threads(finished_threads);
+		collectHistory.setSuccessful_threads(successful_threads);
+		collectHistory.setTotal_threads(progress.getTotalThreads());
+		collectHistory.setStatus(status);
+		collectHistory.setMessage(message);
+		collectHistory.setProcessEnd(Calendar.getInstance().getTime());
+		// status is now read from the database
+		progress.setStatus(status);
+		progressRegistry.remove(collectHistory.getSession());
 	}
 
 	private ProcessBuilder createProcessBuilder(CollectRequest request, String session) {
@@ -124,61 +162,79 @@ public class TwintThread {
 		return processBuilder;
 	}
 
-	private Integer callProcess(ProcessBuilder processBuilder, String got) throws IOException {
-		Process process = processBuilder.start();
-		BufferedReader stdInput = new BufferedReader(new InputStreamReader(process.getInputStream()));
-		BufferedReader stdError = new BufferedReader(new InputStreamReader(process.getErrorStream()));
-		String LoggerString;
-
-		Boolean error_occurred = false;
-
-		while ((LoggerString = stdError.readLine()) != null) {
-
-			Logger.error(LoggerString);
-			// error_occurred = true;
-		}
-
-		Integer nb_tweets = -1;
-		while ((LoggerString = stdInput.readLine()) != null) {
-
-			if (LoggerString.contains("Successfully collected")) {
-				String str = LoggerString.split("Successfully collected ")[1].split(" ")[0];
-				if (str.equals("all"))
-					str = LoggerString.split("Successfully collected ")[1].split(" ")[1];
-				nb_tweets = Integer.parseInt(str);
-				Logger.info("Successfully collected: " + nb_tweets + " " + got);
-
-			}
-		}
-		stdInput.close();
-		stdError.close();
-		if (error_occurred)
-			return -1;
-		return nb_tweets;
+	private TwintProcessReader createProcessReader(Process process, String got, TwintSliceResult sliceResult,
+			SessionProgress progress, long maxDuration) {
+		// push live tweet counts to the session progress and the collect history
+		// while twint is running
+		return new TwintProcessReader(process, got, (nbNewTweets, nbNewBytes) -> {
+			sliceResult.addScraped(nbNewTweets);
+			progress.addTweetsScraped(nbNewTweets);
+			progress.addBytesRead(nbNewBytes);
+			if (nbNewTweets > 0)
+				collectService.addCollectCount(progress.getSession(), nbNewTweets);
+		}, PROGRESS_INTERVAL, maxDuration);
 	}
 
-	private Integer callTwintProcess(CollectRequest request, String session) {
+	private Integer callTwintProcess(TwintSliceResult sliceResult, SessionProgress progress) {
 
 		Integer result = -1;
-		ProcessBuilder processBuilder = createProcessBuilder(request, session);
+		CollectRequest request = sliceResult.getRequest();
+		ProcessBuilder processBuilder = createProcessBuilder(request, progress.getSession());
+		// a time range can be split again if twint is too slow to collect it
+		long maxDuration = 0;
+		if (!request.isDisableTimeRange() && sliceMaxMinutes > 0)
+			maxDuration = sliceMaxMinutes * 60000;
 		try {
-			result = callProcess(processBuilder, "tweets");
+			Process process = processBuilder.start();
+			TwintProcessReader reader = createProcessReader(process, "tweets", sliceResult, progress, maxDuration);
+			result = reader.read();
+			// a slice stopped before printing any tweet is retried as a failure
+			if (reader.isTimedOut() && result != -1)
+				resplitRemaining(sliceResult);
 		} catch (IOException e) {
 			e.printStackTrace();
 		}
 		return result;
 	}
 
-	private Integer callProcessUntilSuccess(CollectRequest request, String session) throws IOException {
+	/**
+	 * twint collects from the newest to the oldest tweet: the part of the slice
+	 * older than the oldest indexed tweet is left to a new split, the current
+	 * slice is reduced to what has been collected. A remaining part too short to
+	 * be split is collected again in one slice.
+	 *
+	 * @param sliceResult slice stopped before its end
+	 */
+	private void resplitRemaining(TwintSliceResult sliceResult) {
+		CollectRequest request = sliceResult.getRequest();
+		Date collected_to = checkpoints.findWhereIndexingStopped(request);
+		if (collected_to == null)
+			collected_to = request.getUntil();
+		if (!collected_to.after(request.getFrom()))
+			return;
+		CollectRequest remaining = new CollectRequest(request);
+		remaining.setUntil(collected_to);
+		int subdivisions = resplitSubdivisions;
+		if (collected_to.getTime() - request.getFrom().getTime() < MIN_RESPLIT_DURATION)
+			subdivisions = 1;
+		Logger.info("Split again remaining range {} - {} in {} slices", remaining.getFrom(), remaining.getUntil(),
+				subdivisions);
+		sliceResult.setRemaining(remaining, subdivisions);
+		request.setFrom(collected_to);
+	}
+
+	private Integer callProcessUntilSuccess(TwintSliceResult sliceResult, SessionProgress progress)
+			throws IOException {
+		CollectRequest request = sliceResult.getRequest();
 		// could add a request subdivision on error
 		Integer nb_tweets = -1;
 		for (int i = 0; i < restart_time && nb_tweets == -1; i++) {
 			Logger.info("Call Process Until success");
 
-			nb_tweets = callTwintProcess(request, session);
+			nb_tweets = callTwintProcess(sliceResult, progress);
 			if (nb_tweets == -1) {
 				Logger.info("Error reprocessing ");
-				Date collected_to = esOperation.findWhereIndexingStopped(request);
+				Date collected_to = checkpoints.findWhereIndexingStopped(request);
 				if (collected_to != null) {
 					request.setUntil(collected_to);
 				}
@@ -4,46 +4,61 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.core.task.TaskExecutor;
-import org.springframework.scheduling.annotation.EnableAsync;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 
 
+/**
+ * twint processes are run by {@link TwintJobScheduler}. The control executor
+ * runs the short stages of a collect (time splitting, job submission, status)
+ * and the enrich executor adds Twittie data to scraped slices, none of them
+ * waits for a whole collect. The slice executor enriches the date slices of
+ * large enrichments in parallel, it has one thread by core, no more than
+ * the Twittie requests allowed in flight.
+ */
 @Configuration
-@EnableAsync
 public class TwintThreadExecutor {
 
-   @Value("${application.twintcall.nb-core-threads}")
-   private int nbCoreThreads;
-   @Value("${application.twintcall.nb-max-threads}")
-   private int nbMaxThreads;
-   @Value("${application.twintcall.nb-queue-threads}")
-   private int nbQueueThreads; 
-   
-   @Value("${application.twintcall.grp-nb-core-threads}")
-   private int nbCoreGroupThreads;
-   @Value("${application.twintcall.grp-nb-max-threads}")
-   private  int nbMaxGroupThreads;
-
-   @Bean(name = "twintCallTaskExecutor")
-   public TaskExecutor twintCallTaskExecutor() {
+   @Value("${application.twintcall.control-threads}")
+   private int nbControlThreads;
+   @Value("${application.twintcall.enrich-threads}")
+   private int nbEnrichThreads;
+   @Value("${application.twintcall.enrich-slices:0}")
+   private int nbEnrichSlices;
+   @Value("${application.twittie.max-in-flight:4}")
+   private int twittieMaxInFlight;
+
+   @Bean(name = "twintControlTaskExecutor")
+   public TaskExecutor twintControlTaskExecutor() {
+
+      ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+      executor.setCorePoolSize(nbControlThreads);
+      executor.setMaxPoolSize(nbControlThreads);
+      executor.setThreadNamePrefix("twintControl-");
+      executor.initialize();
+      return executor;
+   }
+
+   @Bean(name = "twintEnrichTaskExecutor")
+   public TaskExecutor twintEnrichTaskExecutor() {
 
       ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
-      executor.setCorePoolSize(nbCoreThreads);
-      executor.setMaxPoolSize(nbMaxThreads);
-      executor.setQueueCapacity(nbQueueThreads);
-      executor.setThreadNamePrefix("twint-");
+      executor.setCorePoolSize(nbEnrichThreads);
+      executor.setMaxPoolSize(nbEnrichThreads);
+      executor.setThreadNamePrefix("twintEnrich-");
       executor.initialize();
       return executor;
    }
-   
-   @Bean(name = "twintCallGroupTaskExecutor")
-   public TaskExecutor twintCallGroutTaskExecutor() {
-
-       ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
-       executor.setCorePoolSize(nbCoreGroupThreads);
-       executor.setMaxPoolSize(nbMaxGroupThreads);
-       executor.setThreadNamePrefix("twintGroup-");
-       executor.initialize();
-       return executor;
+
+   @Bean(name = "twintEnrichSliceTaskExecutor")
+   public ThreadPoolTaskExecutor twintEnrichSliceTaskExecutor() {
+
+      int nbSlices = nbEnrichSlices > 0 ? nbEnrichSlices
+            : Math.min(Runtime.getRuntime().availableProcessors(), twittieMaxInFlight);
+      ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+      executor.setCorePoolSize(nbSlices);
+      executor.setMaxPoolSize(nbSlices);
+      executor.setThreadNamePrefix("twintEnrichSlice-");
+      executor.initialize();
+      return executor;
    }
 }
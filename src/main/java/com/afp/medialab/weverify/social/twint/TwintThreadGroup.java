@@ -1,38 +1,29 @@
 package com.afp.medialab.weverify.social.twint;
 
-import static java.lang.Math.toIntExact;
-
-import java.time.Duration;
 import java.util.ArrayList;
-import java.util.Calendar;
-import java.util.Date;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.scheduling.annotation.Async;
+import org.springframework.core.task.TaskExecutor;
 import org.springframework.stereotype.Service;
 
 import com.afp.medialab.weverify.social.dao.entity.CollectHistory;
+import com.afp.medialab.weverify.social.dao.service.CollectJobService;
 import com.afp.medialab.weverify.social.dao.service.CollectService;
 import com.afp.medialab.weverify.social.model.CollectRequest;
-import com.afp.medialab.weverify.social.model.Status;
+import com.afp.medialab.weverify.social.twint.TweetieStreamEnricher.SliceEnrichment;
 
 @Service
 public class TwintThreadGroup {
 
 	private static Logger Logger = LoggerFactory.getLogger(TwintThreadGroup.class);
 
-	@Value("${application.twintcall.twint_request_maximum_days}")
-	private Long days_limit;
-
-	@Value("${application.twintcall.twint_big_request_subdivisions}")
-	private Long subdivisions;
-
 	@Value("${command.twint}")
 	private String twintCall;
 
@@ -43,12 +34,24 @@ public class TwintThreadGroup {
 	@Qualifier("twintThread")
 	private TwintThread tt;
 
-	private Date addDuration(Date date, Duration duration) {
-		Calendar calendar = Calendar.getInstance();
-		calendar.setTime(date);
-		calendar.add(Calendar.MINUTE, toIntExact(duration.toMinutes()));
-		return calendar.getTime();
-	}
+	@Autowired
+	private SessionProgressRegistry progressRegistry;
+
+	@Autowired
+	private TwintRequestSplitter requestSplitter;
+
+	@Autowired
+	private TwintJobScheduler scheduler;
+
+	@Autowired
+	@Qualifier("twintControlTaskExecutor")
+	private TaskExecutor controlExecutor;
+
+	@Autowired
+	private TweetieStreamEnricher enricher;
+
+	@Autowired
+	private CollectJobService jobService;
 
 	private ArrayList<CollectRequest> createListOfCollectRequest(List<CollectRequest> collectRequests) {
 		ArrayList<CollectRequest> collectRequestList = new ArrayList<>();
@@ -66,39 +69,7 @@ public class TwintThreadGroup {
 	}
 
 	private ArrayList<CollectRequest> createListOfCollectRequest(CollectRequest collectRequest) {
-
-		ArrayList<CollectRequest> collectRequestList = new ArrayList<>();
-
-		Long maximum_duration = days_limit * 86400000;
-		Long request_duration = collectRequest.getUntil().getTime() - collectRequest.getFrom().getTime();
-
-		if (request_duration < maximum_duration) {
-			collectRequestList.add(collectRequest);
-			return collectRequestList;
-		}
-
-		Duration interval_size = Duration.ofSeconds(request_duration / subdivisions / 1000);
-		Date new_from_date = collectRequest.getFrom();
-		Date final_until = collectRequest.getUntil();
-		Date new_until_date = addDuration(new_from_date, interval_size);
-
-		/* while from < until */
-		while (new_until_date.compareTo(final_until) < 0) {
-			CollectRequest new_collectRequest = new CollectRequest(collectRequest);
-			new_collectRequest.setFrom(new_from_date);
-			new_collectRequest.setUntil(new_until_date);
-			collectRequestList.add(new_collectRequest);
-			new_from_date = new_until_date;
-			new_until_date = addDuration(new_from_date, interval_size);
-		}
-		/* if stopped early replace the last date by final_until */
-		if (new_from_date.compareTo(final_until) < 0) {
-			CollectRequest new_collectRequest = new CollectRequest(
-					(CollectRequest) collectRequestList.get(collectRequestList.size() - 1));
-			new_collectRequest.setUntil(final_until);
-			collectRequestList.set(collectRequestList.size() - 1, new_collectRequest);
-		}
-		return collectRequestList;
+		return new ArrayList<>(requestSplitter.split(collectRequest));
 	}
 
 	private ArrayList<CollectRequest> simpleListOfCollect(CollectRequest collectRequest) {
@@ -107,36 +78,160 @@ public class TwintThreadGroup {
 		return collectRequestList;
 	}
 
-	@Async(value = "twintCallGroupTaskExecutor")
-	public void callTwintMultiThreaded(CollectHistory collectHistory, CollectRequest request) {
-		ArrayList<CollectRequest> collectRequestList = null;
-		if (request.isDisableTimeRange())
-			collectRequestList = simpleListOfCollect(request);
-		else
-			collectRequestList = createListOfCollectRequest(request);
-
-		callTwintThreads(collectRequestList, collectHistory);
+	/**
+	 * Collect a request, split in time slices
+	 *
+	 * @param collectHistory
+	 * @param request
+	 * @return future completed when every slice of this request is collected
+	 */
+	public CompletableFuture<Void> callTwintMultiThreaded(CollectHistory collectHistory, CollectRequest request) {
+		return collect(collectHistory, () -> {
+			if (request.isDisableTimeRange())
+				return simpleListOfCollect(request);
+			return createListOfCollectRequest(request);
+		}, simpleListOfCollect(request));
 	}
 
-	@Async(value = "twintCallGroupTaskExecutor")
-	public void callTwintMultiThreaded(CollectHistory collectHistory, List<CollectRequest> collectRequest) {
-
-		ArrayList<CollectRequest> collectRequestList = createListOfCollectRequest(collectRequest);
-		callTwintThreads(collectRequestList, collectHistory);
+	/**
+	 * Collect a list of requests, each split in time slices
+	 *
+	 * @param collectHistory
+	 * @param collectRequest
+	 * @return future completed when every slice of this request is collected
+	 */
+	public CompletableFuture<Void> callTwintMultiThreaded(CollectHistory collectHistory,
+			List<CollectRequest> collectRequest) {
+		return collect(collectHistory, () -> createListOfCollectRequest(collectRequest),
+				new ArrayList<>(collectRequest));
+	}
 
+	/**
+	 * split -> scrape and enrich -> finalize, each stage is started by the
+	 * completion of the previous one so no thread waits for a whole session. The
+	 * launch is counted as pending before the split, so the session is finalized
+	 * by its last finished slice or by its last launch once every launch has
+	 * added its slices.
+	 *
+	 * @param unsplit requests collected as they are if the split fails
+	 */
+	private CompletableFuture<Void> collect(CollectHistory collectHistory, Supplier<List<CollectRequest>> split,
+			List<CollectRequest> unsplit) {
+		SessionProgress progress = progressRegistry.register(collectHistory);
+		progress.launchStarted();
+		return CompletableFuture.supplyAsync(split, controlExecutor).exceptionally(e -> {
+			Logger.error("Error splitting session {}, collect the requests unsplit", collectHistory.getSession(), e);
+			return unsplit;
+		}).thenCompose(collectRequestList -> {
+			CompletableFuture<Void> slices;
+			try {
+				slices = collectSlices(collectHistory, collectRequestList);
+			} finally {
+				if (progress.launchDone())
+					finalizeSession(collectHistory);
+			}
+			return slices;
+		}).whenComplete((v, e) -> {
+			if (e != null)
+				Logger.error("Error collecting session {}", collectHistory.getSession(), e);
+		});
 	}
 
-	private void callTwintThreads(ArrayList<CollectRequest> collectRequestList, CollectHistory collectHistory) {
-		collectHistory.setTotal_threads(collectHistory.getTotal_threads() + collectRequestList.size());
-		collectHistory.setStatus(Status.Running);
-		collectService.save_collectHistory(collectHistory);
-		ArrayList<CompletableFuture<Integer>> result = new ArrayList<>();
+	private CompletableFuture<Void> collectSlices(CollectHistory collectHistory,
+			List<CollectRequest> collectRequestList) {
+		progressRegistry.register(collectHistory).addSubRanges(collectRequestList.size());
+		collectService.addCollectThreads(collectHistory.getSession(), collectRequestList.size());
 
-		Logger.debug("launch thread group");
+		Logger.debug("queue thread group");
+		List<CompletableFuture<Void>> slices = new ArrayList<>();
 		for (CollectRequest collectRequest : collectRequestList) {
-			result.add(tt.callTwint(collectHistory, collectRequest));
+			Integer jobId = jobService.createJob(collectHistory.getSession(), collectRequest);
+			slices.add(collectSlice(collectHistory, collectRequest, collectRequest, jobId));
 		}
-		CompletableFuture.allOf(result.toArray(new CompletableFuture<?>[result.size()])).join();
+		return CompletableFuture.allOf(slices.toArray(new CompletableFuture<?>[slices.size()]));
+	}
+
+	/**
+	 * Run again a slice left unfinished by a previous run, it is already counted
+	 * in the threads of its session
+	 *
+	 * @param collectHistory
+	 * @param scrapeRequest  range left to scrape, null if the slice is scraped
+	 * @param enrichRequest  whole range of the slice
+	 * @param jobId
+	 * @return future completed when the slice is collected
+	 */
+	public CompletableFuture<Void> resumeSlice(CollectHistory collectHistory, CollectRequest scrapeRequest,
+			CollectRequest enrichRequest, Integer jobId) {
+		progressRegistry.register(collectHistory);
+		if (scrapeRequest != null)
+			return collectSlice(collectHistory, scrapeRequest, enrichRequest, jobId);
+		TwintSliceResult sliceResult = new TwintSliceResult(enrichRequest);
+		sliceResult.setCount(0);
+		SliceEnrichment enrichment = enricher.create(collectHistory.getSession(), enrichRequest);
+		enrichment.scrapingDone(enrichRequest);
+		return sliceEnriched(collectHistory, sliceResult, enrichment, jobId);
+	}
+
+	/**
+	 * Count as failed a slice that will not be run again
+	 *
+	 * @param collectHistory
+	 * @param collectRequest
+	 * @param jobId
+	 */
+	public void abandonSlice(CollectHistory collectHistory, CollectRequest collectRequest, Integer jobId) {
+		jobService.jobFailed(jobId);
+		if (tt.sliceDone(collectHistory, new TwintSliceResult(collectRequest)))
+			finalizeSession(collectHistory);
+	}
+
+	/**
+	 * Scrape a slice with a twint process while its tweets are enriched outside of
+	 * the process limit. The remaining part of a stopped slice is split and
+	 * collected with it. The state of the slice is saved in its job.
+	 */
+	private CompletableFuture<Void> collectSlice(CollectHistory collectHistory, CollectRequest collectRequest,
+			CollectRequest enrichRequest, Integer jobId) {
+		SliceEnrichment enrichment = enricher.create(collectHistory.getSession(), enrichRequest);
+		return scheduler.submit(collectHistory.getSession(), () -> {
+			jobService.jobStarted(jobId);
+			enrichment.start();
+			return tt.scrape(collectHistory, collectRequest);
+		}).exceptionally(e -> {
+			// counted as a failed slice
+			Logger.error("Error scraping slice", e);
+			return new TwintSliceResult(collectRequest);
+		}).thenComposeAsync(sliceResult -> {
+			CompletableFuture<Void> remaining = CompletableFuture.completedFuture(null);
+			if (sliceResult.getRemaining() != null) {
+				List<CollectRequest> resplit = simpleListOfCollect(sliceResult.getRemaining());
+				if (sliceResult.getRemainingSubdivisions() > 1)
+					resplit = requestSplitter.resplit(sliceResult.getRemaining(),
+							sliceResult.getRemainingSubdivisions());
+				remaining = collectSlices(collectHistory, resplit);
+			}
+			jobService.jobScraped(jobId, sliceResult.getRequest(), sliceResult.getCount() != -1,
+					sliceResult.getCount());
+			enrichment.scrapingDone(sliceResult.getRequest());
+			return CompletableFuture.allOf(remaining, sliceEnriched(collectHistory, sliceResult, enrichment, jobId));
+		}, controlExecutor);
+	}
+
+	private CompletableFuture<Void> sliceEnriched(CollectHistory collectHistory, TwintSliceResult sliceResult,
+			SliceEnrichment enrichment, Integer jobId) {
+		return enrichment.future().whenComplete((v, e) -> {
+			if (sliceResult.getCount() != -1)
+				jobService.jobEnriched(jobId);
+			// the last finished slice of the session saves its status
+			if (tt.sliceDone(collectHistory, sliceResult))
+				finalizeSession(collectHistory);
+		});
+	}
+
+	private void finalizeSession(CollectHistory collectHistory) {
+		tt.finalizeSession(collectHistory);
+		jobService.purgeFinishedJobs();
 	}
 
 }
@@ -0,0 +1,155 @@
+package com.afp.medialab.weverify.social.twint;
+
+import java.util.function.LongSupplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Circuit breaker of the Twittie service.
+ *
+ * The outcome of the last calls is kept in a window. When the failure rate of
+ * the window reaches the threshold the circuit opens and calls are refused
+ * without waiting for a timeout. Once the open delay is over a single probe call
+ * is let through: a success closes the circuit, a failure opens it again for
+ * twice the previous delay, up to a maximum.
+ *
+ * @author Medialab
+ */
+@Component
+public class TwittieCircuitBreaker {
+
+	private static final Logger Logger = LoggerFactory.getLogger(TwittieCircuitBreaker.class);
+
+	public enum State {
+		CLOSED, OPEN, HALF_OPEN
+	}
+
+	private final boolean[] window;
+	private final int minCalls;
+	private final double failureRateThreshold;
+	private final long initialOpenDelay;
+	private final long maxOpenDelay;
+	private final LongSupplier clock;
+
+	private State state = State.CLOSED;
+	private int nbCalls = 0;
+	private int nbFailures = 0;
+	private int next = 0;
+	private long openDelay;
+	private long openUntil = 0;
+	private boolean probing = false;
+
+	@Autowired
+	public TwittieCircuitBreaker(@Value("${application.twittie.breaker.window-size:20}") int windowSize,
+			@Value("${application.twittie.breaker.min-calls:5}") int minCalls,
+			@Value("${application.twittie.breaker.failure-rate:0.5}") double failureRateThreshold,
+			@Value("${application.twittie.breaker.open-delay:5000}") long initialOpenDelay,
+			@Value("${application.twittie.breaker.max-open-delay:300000}") long maxOpenDelay) {
+		this(windowSize, minCalls, failureRateThreshold, initialOpenDelay, maxOpenDelay, System::currentTimeMillis);
+	}
+
+	public TwittieCircuitBreaker(int windowSize, int minCalls, double failureRateThreshold, long initialOpenDelay,
+			long maxOpenDelay, LongSupplier clock) {
+		this.window = new boolean[windowSize];
+		this.minCalls = minCalls;
+		this.failureRateThreshold = failureRateThreshold;
+		this.initialOpenDelay = initialOpenDelay;
+		this.maxOpenDelay = maxOpenDelay;
+		this.openDelay = initialOpenDelay;
+		this.clock = clock;
+	}
+
+	/**
+	 * Ask for a call, every permitted call must be followed by
+	 * {@link #onSuccess()} or {@link #onFailure()}
+	 *
+	 * @return false if the call must not be made
+	 */
+	public synchronized boolean allowRequest() {
+		switch (state) {
+		case CLOSED:
+			return true;
+		case OPEN:
+			if (clock.getAsLong() < openUntil)
+				return false;
+			Logger.info("Twittie circuit half open, probing the service");
+			state = State.HALF_OPEN;
+			probing = true;
+			return true;
+		default:
+			if (probing)
+				return false;
+			probing = true;
+			return true;
+		}
+	}
+
+	/**
+	 * @return true if a call would be permitted now
+	 */
+	public synchronized boolean isAvailable() {
+		if (state == State.OPEN)
+			return clock.getAsLong() >= openUntil;
+		return state == State.CLOSED || !probing;
+	}
+
+	public synchronized void onSuccess() {
+		if (state == State.HALF_OPEN) {
+			Logger.info("Twittie circuit closed");
+			state = State.CLOSED;
+			probing = false;
+			openDelay = initialOpenDelay;
+			resetWindow();
+			return;
+		}
+		record(false);
+	}
+
+	public synchronized void onFailure() {
+		if (state == State.HALF_OPEN) {
+			probing = false;
+			openDelay = Math.min(maxOpenDelay, openDelay * 2);
+			open();
+			return;
+		}
+		if (state == State.OPEN)
+			return;
+		record(true);
+		if (nbCalls >= minCalls && nbFailures >= failureRateThreshold * nbCalls)
+			open();
+	}
+
+	public synchronized State getState() {
+		return state;
+	}
+
+	private void open() {
+		state = State.OPEN;
+		openUntil = clock.getAsLong() + openDelay;
+		resetWindow();
+		Logger.error("Twittie circuit open for {} ms", openDelay);
+	}
+
+	private void record(boolean failure) {
+		if (nbCalls == window.length) {
+			if (window[next])
+				nbFailures--;
+		} else {
+			nbCalls++;
+		}
+		window[next] = failure;
+		if (failure)
+			nbFailures++;
+		next = (next + 1) % window.length;
+	}
+
+	private void resetWindow() {
+		nbCalls = 0;
+		nbFailures = 0;
+		next = 0;
+	}
+}
@@ -0,0 +1,261 @@
+package com.afp.medialab.weverify.social.twint;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import javax.annotation.PreDestroy;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.util.EntityUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.afp.medialab.weverify.social.model.twint.TwittieResponse;
+import com.afp.medialab.weverify.social.model.twint.TwittieResponse.TwittieEntityJson;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Annotate tweets with the Twittie GATE service by batch.
+ *
+ * The tweets of a batch are sent as a single document, separated by blank
+ * lines. Annotations are given back to each tweet from their start and end
+ * offsets.
+ *
+ * Batches are posted with a pooled asynchronous HTTP client keeping its
+ * connections alive. A semaphore bounds the number of requests in flight:
+ * callers wait for a free slot instead of piling requests on the service.
+ * Request latencies are published as the twittie.requests timer. Requests
+ * go through {@link TwittieCircuitBreaker}.
+ *
+ * @author Medialab
+ */
+@Component
+public class TwittieClient {
+
+	private static final Logger Logger = LoggerFactory.getLogger(TwittieClient.class);
+
+	/**
+	 * GATE never annotates across a blank line
+	 */
+	static final String SEPARATOR = "\n\n";
+
+	private static final ObjectReader responseReader = new ObjectMapper().readerFor(TwittieResponse.class)
+			.at("/response/annotations");
+
+	private static final Pattern NORMALIZE = Pattern.compile(" |/.");
+
+	private final String twittieURL;
+	private final int batchSize;
+	private final Semaphore inFlight;
+	private final TwittieCircuitBreaker breaker;
+	private final CloseableHttpAsyncClient httpClient;
+	private final Timer successTimer;
+	private final Timer errorTimer;
+
+	public TwittieClient(@Value("${application.twittie.url}") String twittieURL,
+			@Value("${application.twittie.batch-size:50}") int batchSize,
+			@Value("${application.twittie.max-in-flight:4}") int maxInFlight,
+			@Value("${application.twittie.connect-timeout:5000}") int connectTimeout,
+			@Value("${application.twittie.read-timeout:10000}") int readTimeout, TwittieCircuitBreaker breaker,
+			MeterRegistry meterRegistry) {
+		this.twittieURL = twittieURL;
+		this.breaker = breaker;
+		this.batchSize = batchSize;
+		this.inFlight = new Semaphore(maxInFlight);
+		RequestConfig requestConfig = RequestConfig.custom().setConnectTimeout(connectTimeout)
+				.setConnectionRequestTimeout(connectTimeout).setSocketTimeout(readTimeout).build();
+		this.httpClient = HttpAsyncClients.custom().setDefaultRequestConfig(requestConfig)
+				.setMaxConnTotal(maxInFlight).setMaxConnPerRoute(maxInFlight).build();
+		this.httpClient.start();
+		this.successTimer = timer(meterRegistry, "success");
+		this.errorTimer = timer(meterRegistry, "error");
+	}
+
+	private static Timer timer(MeterRegistry meterRegistry, String outcome) {
+		return Timer.builder("twittie.requests").description("Twittie annotation requests").tag("outcome", outcome)
+				.publishPercentileHistogram().register(meterRegistry);
+	}
+
+	/**
+	 * Annotate tweets, tweets must not contain blank lines
+	 *
+	 * @param tweets
+	 * @return detected entities of each tweet, in the same order
+	 * @throws IOException if Twittie could not be called or answered an
+	 *                     unexpected document
+	 */
+	public List<List<Tweetie>> annotate(List<String> tweets) throws IOException {
+		List<int[]> batchOffsets = new ArrayList<>();
+		List<CompletableFuture<byte[]>> responses = new ArrayList<>();
+		for (int i = 0; i < tweets.size(); i += batchSize) {
+			List<String> batch = tweets.subList(i, Math.min(tweets.size(), i + batchSize));
+			int[] starts = new int[batch.size()];
+			String document = document(batch, starts);
+			batchOffsets.add(starts);
+			responses.add(post(document));
+		}
+
+		List<List<Tweetie>> tweeties = new ArrayList<>(tweets.size());
+		for (int i = 0; i < responses.size(); i++) {
+			byte[] response;
+			try {
+				response = responses.get(i).join();
+			} catch (CompletionException e) {
+				throw new IOException("FAILED CALLING TWITTIE", e.getCause());
+			}
+			int from = i * batchSize;
+			tweeties.addAll(parse(response, tweets.subList(from, Math.min(tweets.size(), from + batchSize)),
+					batchOffsets.get(i)));
+		}
+		return tweeties;
+	}
+
+	private String document(List<String> tweets, int[] starts) {
+		StringBuilder document = new StringBuilder();
+		for (int i = 0; i < tweets.size(); i++) {
+			if (i > 0)
+				document.append(SEPARATOR);
+			starts[i] = document.length();
+			document.append(tweets.get(i));
+		}
+		return document.toString();
+	}
+
+	/**
+	 * Post a document once a request slot is free, fail at once if the circuit
+	 * is open
+	 */
+	private CompletableFuture<byte[]> post(String document) throws IOException {
+		try {
+			inFlight.acquire();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while waiting for Twittie", e);
+		}
+		if (!breaker.allowRequest()) {
+			inFlight.release();
+			throw new IOException("Twittie circuit is open");
+		}
+		CompletableFuture<byte[]> response = new CompletableFuture<byte[]>();
+		HttpPost post = new HttpPost(twittieURL);
+		post.setEntity(new StringEntity(document, ContentType.create("text/plain", StandardCharsets.UTF_8)));
+		long start = System.nanoTime();
+		try {
+			execute(post, start, response);
+		} catch (RuntimeException e) {
+			inFlight.release();
+			breaker.onFailure();
+			throw new IOException("FAILED CALLING TWITTIE", e);
+		}
+		return response;
+	}
+
+	private void execute(HttpPost post, long start, CompletableFuture<byte[]> response) {
+		httpClient.execute(post, new FutureCallback<HttpResponse>() {
+
+			@Override
+			public void completed(HttpResponse result) {
+				byte[] body;
+				try {
+					int status = result.getStatusLine().getStatusCode();
+					body = EntityUtils.toByteArray(result.getEntity());
+					if (status != 200)
+						throw new IOException("Twittie answered " + status);
+				} catch (Exception e) {
+					// the request slot must be released whatever the error
+					failed(e);
+					return;
+				}
+				done(successTimer);
+				breaker.onSuccess();
+				response.complete(body);
+			}
+
+			@Override
+			public void failed(Exception e) {
+				done(errorTimer);
+				breaker.onFailure();
+				response.completeExceptionally(e);
+			}
+
+			@Override
+			public void cancelled() {
+				failed(new IOException("Twittie request cancelled"));
+			}
+
+			private void done(Timer timer) {
+				timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+				inFlight.release();
+			}
+		});
+	}
+
+	private List<List<Tweetie>> parse(byte[] response, List<String> tweets, int[] starts) throws IOException {
+		int[] ends = new int[tweets.size()];
+		List<List<Tweetie>> tweeties = new ArrayList<>(tweets.size());
+		for (int i = 0; i < tweets.size(); i++) {
+			ends[i] = starts[i] + tweets.get(i).length();
+			tweeties.add(new ArrayList<Tweetie>());
+		}
+
+		TwittieResponse twittieResponse = responseReader.readValue(response);
+
+		dispatch(twittieResponse.getPerson(), "Person", starts, ends, tweeties);
+		dispatch(twittieResponse.getUserID(), "UserID", starts, ends, tweeties);
+		dispatch(twittieResponse.getLocation(), "Location", starts, ends, tweeties);
+		dispatch(twittieResponse.getOrganization(), "Organization", starts, ends, tweeties);
+		return tweeties;
+	}
+
+	/**
+	 * Give each annotation to the tweet containing its offsets
+	 */
+	private void dispatch(List<? extends TwittieEntityJson<?>> entities, String entity, int[] starts, int[] ends,
+			List<List<Tweetie>> tweeties) {
+		if (entities == null)
+			return;
+		for (TwittieEntityJson<?> json : entities) {
+			int index = Arrays.binarySearch(starts, json.getStart());
+			if (index < 0)
+				index = -index - 2;
+			if (index < 0 || json.getEnd() > ends[index]) {
+				Logger.warn("Twittie annotation out of any tweet: {}-{}", json.getStart(), json.getEnd());
+				continue;
+			}
+			tweeties.get(index).add(tweetie(json.getFeatures().getString(), entity, json.getStart() - starts[index],
+					json.getEnd() - starts[index]));
+		}
+	}
+
+	private Tweetie tweetie(String feature, String entity, int start, int end) {
+		if (entity.equals("UserID"))
+			return new Tweetie("@" + feature, "@" + feature.toLowerCase(), entity, start, end);
+		return new Tweetie(feature, NORMALIZE.matcher(feature.toLowerCase()).replaceAll("_"), entity, start, end);
+	}
+
+	@PreDestroy
+	public void shutdown() throws IOException {
+		httpClient.close();
+	}
+}
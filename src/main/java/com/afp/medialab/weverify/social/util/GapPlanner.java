@@ -0,0 +1,69 @@
+package com.afp.medialab.weverify.social.util;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Turn the ranges left to collect by an incremental collect into a few twint
+ * requests.
+ *
+ * Starting a twint process costs more than scraping a few minutes again, so
+ * gaps separated by less than the slack are collected together, gaps shorter
+ * than the minimum width are not collected, and the result is cut into slices
+ * of at most the configured size.
+ *
+ * @author Medialab
+ */
+@Component
+public class GapPlanner {
+
+	private static Logger Logger = LoggerFactory.getLogger(GapPlanner.class);
+
+	private static final long MINUTE = 60000L;
+	private static final long DAY = 86400000L;
+
+	private final long slack;
+	private final long minWidth;
+	private final long sliceSize;
+
+	@Autowired
+	public GapPlanner(@Value("${application.twintcall.gap-merge-slack-minutes:60}") long slackMinutes,
+			@Value("${application.twintcall.gap-min-minutes:5}") long minWidthMinutes,
+			@Value("${application.twintcall.twint_request_maximum_days}") long sliceDays) {
+		this.slack = slackMinutes * MINUTE;
+		this.minWidth = minWidthMinutes * MINUTE;
+		this.sliceSize = sliceDays * DAY;
+	}
+
+	/**
+	 * @param gaps ranges not collected yet
+	 * @return ranges to collect, in ascending order, empty if every gap is too
+	 *         small
+	 */
+	public List<DateRange> plan(List<DateRange> gaps) {
+		IntervalSet merged = IntervalSet.of(gaps).fillGaps(slack).dropShorterThan(minWidth);
+		List<DateRange> slices = new ArrayList<DateRange>();
+		for (int i = 0; i < merged.size(); i++) {
+			long start = merged.start(i);
+			long end = merged.end(i);
+			long nbSlices = sliceSize <= 0 ? 1 : (end - start + sliceSize - 1) / sliceSize;
+			long length = (end - start) / nbSlices;
+			for (long k = 0; k < nbSlices; k++) {
+				// twint dates are precise to the second
+				long sliceEnd = k == nbSlices - 1 ? end : start + length - (start + length) % 1000;
+				slices.add(new DateRange(new Date(start), new Date(sliceEnd)));
+				start = sliceEnd;
+			}
+		}
+		if (slices.size() != gaps.size())
+			Logger.debug("{} gaps planned as {} ranges", gaps.size(), slices.size());
+		return slices;
+	}
+}
@@ -0,0 +1,301 @@
+package com.afp.medialab.weverify.social.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Immutable set of half-open time intervals [start, end) in epoch
+ * milliseconds.
+ *
+ * Intervals are kept sorted and coalesced: two intervals never overlap nor
+ * touch. Union, intersection and difference walk both sets once, building a
+ * set from unsorted ranges costs a sort.
+ *
+ * @author Medialab
+ */
+public final class IntervalSet {
+
+	private static final IntervalSet EMPTY = new IntervalSet(new long[0], new long[0], 0);
+
+	private final long[] starts;
+	private final long[] ends;
+	private final int size;
+
+	private IntervalSet(long[] starts, long[] ends, int size) {
+		this.starts = starts;
+		this.ends = ends;
+		this.size = size;
+	}
+
+	public static IntervalSet empty() {
+		return EMPTY;
+	}
+
+	/**
+	 * @param start inclusive
+	 * @param end   exclusive
+	 * @return empty set if end is not after start
+	 */
+	public static IntervalSet of(long start, long end) {
+		if (end <= start)
+			return EMPTY;
+		return new IntervalSet(new long[] { start }, new long[] { end }, 1);
+	}
+
+	public static IntervalSet of(DateRange range) {
+		return of(range.getStartDate().getTime(), range.getEndDate().getTime());
+	}
+
+	/**
+	 * @param ranges in any order, they may overlap
+	 * @return union of the ranges
+	 */
+	public static IntervalSet of(Collection<DateRange> ranges) {
+		long[][] intervals = new long[ranges.size()][];
+		int n = 0;
+		for (DateRange range : ranges)
+			intervals[n++] = new long[] { range.getStartDate().getTime(), range.getEndDate().getTime() };
+		Arrays.sort(intervals, (a, b) -> Long.compare(a[0], b[0]));
+		Builder builder = new Builder(n);
+		for (long[] interval : intervals)
+			builder.add(interval[0], interval[1]);
+		return builder.build();
+	}
+
+	public IntervalSet union(IntervalSet other) {
+		Builder builder = new Builder(size + other.size);
+		int i = 0;
+		int j = 0;
+		while (i < size || j < other.size) {
+			if (j == other.size || (i < size && starts[i] <= other.starts[j])) {
+				builder.add(starts[i], ends[i]);
+				i++;
+			} else {
+				builder.add(other.starts[j], other.ends[j]);
+				j++;
+			}
+		}
+		return builder.build();
+	}
+
+	public IntervalSet intersection(IntervalSet other) {
+		Builder builder = new Builder(Math.min(size, other.size));
+		int i = 0;
+		int j = 0;
+		while (i < size && j < other.size) {
+			builder.add(Math.max(starts[i], other.starts[j]), Math.min(ends[i], other.ends[j]));
+			if (ends[i] < other.ends[j])
+				i++;
+			else
+				j++;
+		}
+		return builder.build();
+	}
+
+	/**
+	 * @param other
+	 * @return parts of this set not in other
+	 */
+	public IntervalSet difference(IntervalSet other) {
+		Builder builder = new Builder(size);
+		int j = 0;
+		for (int i = 0; i < size; i++) {
+			long start = starts[i];
+			// intervals of other ending before this one are not needed anymore
+			j = other.firstEndingAfter(start, j);
+			int k = j;
+			while (k < other.size && other.starts[k] < ends[i]) {
+				builder.add(start, other.starts[k]);
+				start = Math.max(start, other.ends[k]);
+				k++;
+			}
+			builder.add(start, ends[i]);
+		}
+		return builder.build();
+	}
+
+	/**
+	 * @param maxGap
+	 * @return this set with the holes not longer than maxGap filled
+	 */
+	public IntervalSet fillGaps(long maxGap) {
+		Builder builder = new Builder(size);
+		for (int i = 0; i < size; i++) {
+			if (builder.size > 0 && starts[i] - builder.ends[builder.size - 1] <= maxGap)
+				builder.add(builder.ends[builder.size - 1], ends[i]);
+			else
+				builder.add(starts[i], ends[i]);
+		}
+		return builder.build();
+	}
+
+	/**
+	 * @param minLength
+	 * @return intervals at least minLength long
+	 */
+	public IntervalSet dropShorterThan(long minLength) {
+		Builder builder = new Builder(size);
+		for (int i = 0; i < size; i++)
+			if (ends[i] - starts[i] >= minLength)
+				builder.add(starts[i], ends[i]);
+		return builder.build();
+	}
+
+	/**
+	 * @param start inclusive
+	 * @param end   exclusive
+	 * @return true if every instant of the interval is in this set
+	 */
+	public boolean covers(long start, long end) {
+		if (end <= start)
+			return true;
+		int i = indexOf(start);
+		return i >= 0 && ends[i] >= end;
+	}
+
+	/**
+	 * @return true if the interval and this set have an instant in common
+	 */
+	public boolean overlaps(long start, long end) {
+		if (end <= start)
+			return false;
+		int i = indexOf(start);
+		if (i >= 0)
+			return true;
+		int next = -i - 1;
+		return next < size && starts[next] < end;
+	}
+
+	/**
+	 * @return index of the first interval from index from ending after instant
+	 */
+	private int firstEndingAfter(long instant, int from) {
+		if (from >= size || ends[from] > instant)
+			return from;
+		int i = Arrays.binarySearch(ends, from, size, instant);
+		// ends are distinct, the interval ending at instant does not contain it
+		return i >= 0 ? i + 1 : -i - 1;
+	}
+
+	/**
+	 * @return index of the interval containing instant, or -(index of the next
+	 *         interval) - 1
+	 */
+	private int indexOf(long instant) {
+		int i = Arrays.binarySearch(starts, 0, size, instant);
+		if (i >= 0)
+			return i;
+		int before = -i - 2;
+		if (before >= 0 && ends[before] > instant)
+			return before;
+		return i;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * @return number of disjoint intervals
+	 */
+	public int size() {
+		return size;
+	}
+
+	public long start(int i) {
+		return starts[i];
+	}
+
+	public long end(int i) {
+		return ends[i];
+	}
+
+	/**
+	 * @return sum of the interval lengths
+	 */
+	public long length() {
+		long length = 0;
+		for (int i = 0; i < size; i++)
+			length += ends[i] - starts[i];
+		return length;
+	}
+
+	public List<DateRange> toDateRanges() {
+		List<DateRange> ranges = new ArrayList<DateRange>(size);
+		for (int i = 0; i < size; i++)
+			ranges.add(new DateRange(new Date(starts[i]), new Date(ends[i])));
+		return ranges;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (!(obj instanceof IntervalSet))
+			return false;
+		IntervalSet other = (IntervalSet) obj;
+		if (size != other.size)
+			return false;
+		for (int i = 0; i < size; i++)
+			if (starts[i] != other.starts[i] || ends[i] != other.ends[i])
+				return false;
+		return true;
+	}
+
+	@Override
+	public int hashCode() {
+		int hash = 1;
+		for (int i = 0; i < size; i++)
+			hash = 31 * (31 * hash + Long.hashCode(starts[i])) + Long.hashCode(ends[i]);
+		return hash;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder("[");
+		for (int i = 0; i < size; i++) {
+			if (i > 0)
+				sb.append(", ");
+			sb.append('[').append(starts[i]).append(", ").append(ends[i]).append(')');
+		}
+		return sb.append(']').toString();
+	}
+
+	/**
+	 * Coalesce intervals given by ascending start
+	 */
+	private static class Builder {
+
+		private long[] starts;
+		private long[] ends;
+		private int size = 0;
+
+		Builder(int capacity) {
+			starts = new long[Math.max(1, capacity)];
+			ends = new long[starts.length];
+		}
+
+		void add(long start, long end) {
+			if (end <= start)
+				return;
+			if (size > 0 && start <= ends[size - 1]) {
+				ends[size - 1] = Math.max(ends[size - 1], end);
+				return;
+			}
+			if (size == starts.length) {
+				starts = Arrays.copyOf(starts, size * 2);
+				ends = Arrays.copyOf(ends, size * 2);
+			}
+			starts[size] = start;
+			ends[size] = end;
+			size++;
+		}
+
+		IntervalSet build() {
+			return size == 0 ? EMPTY : new IntervalSet(starts, ends, size);
+		}
+	}
+}
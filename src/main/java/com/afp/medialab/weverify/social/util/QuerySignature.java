@@ -0,0 +1,84 @@
+package com.afp.medialab.weverify.social.util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Locale;
+import java.util.TreeSet;
+
+import org.springframework.util.DigestUtils;
+
+import com.afp.medialab.weverify.social.dao.entity.Request;
+import com.afp.medialab.weverify.social.model.CollectRequest;
+
+/**
+ * Canonical form of the criteria of a collect, without its time range.
+ *
+ * Two collects scraping the same tweets have the same signature whatever the
+ * order or case of their keywords, banned words and users. The fingerprint,
+ * a hash of the signature, is stored with each {@link Request} to find the
+ * requests of a signature with an indexed query.
+ *
+ * @author Medialab
+ */
+public final class QuerySignature {
+
+	private QuerySignature() {
+	}
+
+	public static String of(CollectRequest collectRequest) {
+		return of(collectRequest.getKeywordList(), collectRequest.getBannedWords(), collectRequest.getUserList(),
+				collectRequest.getLang(), collectRequest.isVerified(), collectRequest.getMedia(),
+				collectRequest.getRetweetsHandling());
+	}
+
+	public static String of(Request request) {
+		return of(request.getKeywordList(), request.getBannedWords(), request.getUserList(), request.getLanguage(),
+				Boolean.TRUE.equals(request.getVerified()), request.getMedia(), request.getRetweetsHandling());
+	}
+
+	public static String fingerprint(CollectRequest collectRequest) {
+		return fingerprint(of(collectRequest));
+	}
+
+	public static String fingerprint(Request request) {
+		return fingerprint(of(request));
+	}
+
+	/**
+	 * @param signature
+	 * @return hexadecimal MD5 of the signature, 32 characters
+	 */
+	public static String fingerprint(String signature) {
+		return DigestUtils.md5DigestAsHex(signature.getBytes(StandardCharsets.UTF_8));
+	}
+
+	public static String of(Collection<String> keywords, Collection<String> bannedWords, Collection<String> users,
+			String lang, boolean verified, String media, String retweetsHandling) {
+		StringBuilder signature = new StringBuilder();
+		append(signature, "k", keywords);
+		append(signature, "b", bannedWords);
+		append(signature, "u", users);
+		append(signature, "l", lang);
+		append(signature, "v", String.valueOf(verified));
+		append(signature, "m", media);
+		append(signature, "r", retweetsHandling);
+		return signature.toString();
+	}
+
+	private static void append(StringBuilder signature, String key, Collection<String> values) {
+		TreeSet<String> sorted = new TreeSet<String>();
+		if (values != null)
+			for (String value : values)
+				if (value != null && !value.trim().isEmpty())
+					sorted.add(value.trim().toLowerCase(Locale.ROOT));
+		append(signature, key, String.join(",", sorted));
+	}
+
+	private static void append(StringBuilder signature, String key, String value) {
+		if (signature.length() > 0)
+			signature.append('|');
+		signature.append(key).append('=');
+		if (value != null)
+			signature.append(value.trim().toLowerCase(Locale.ROOT));
+	}
+}
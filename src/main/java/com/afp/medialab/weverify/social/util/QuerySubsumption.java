@@ -0,0 +1,70 @@
+package com.afp.medialab.weverify.social.util;
+
+import java.util.Collection;
+import java.util.Locale;
+import java.util.Set;
+import java.util.TreeSet;
+
+import com.afp.medialab.weverify.social.model.CollectRequest;
+
+/**
+ * Decide if the tweets collected for a query contain every tweet of another
+ * query, which can then be answered by filtering them.
+ *
+ * Keywords are all required and banned words all excluded, so a query with
+ * more keywords or more banned words is narrower. A language or a list of
+ * users can be added too. Verified, media and retweets handling cannot be
+ * checked on indexed tweets and must be the same.
+ *
+ * @author Medialab
+ */
+public final class QuerySubsumption {
+
+	private QuerySubsumption() {
+	}
+
+	/**
+	 * @param broader
+	 * @param narrower
+	 * @return true if every tweet of narrower matches broader, regardless of
+	 *         their time ranges
+	 */
+	public static boolean subsumes(CollectRequest broader, CollectRequest narrower) {
+		if (!normalize(narrower.getKeywordList()).containsAll(normalize(broader.getKeywordList())))
+			return false;
+		if (!normalize(narrower.getBannedWords()).containsAll(normalize(broader.getBannedWords())))
+			return false;
+		Set<String> broaderUsers = normalize(broader.getUserList());
+		Set<String> narrowerUsers = normalize(narrower.getUserList());
+		if (!broaderUsers.isEmpty() && (narrowerUsers.isEmpty() || !broaderUsers.containsAll(narrowerUsers)))
+			return false;
+		String broaderLang = normalize(broader.getLang());
+		if (!broaderLang.isEmpty() && !broaderLang.equals(normalize(narrower.getLang())))
+			return false;
+		return broader.isVerified() == narrower.isVerified()
+				&& normalize(broader.getMedia()).equals(normalize(narrower.getMedia()))
+				&& normalize(broader.getRetweetsHandling()).equals(normalize(narrower.getRetweetsHandling()));
+	}
+
+	/**
+	 * @return words of narrower missing from broader
+	 */
+	public static Set<String> extra(Collection<String> broader, Collection<String> narrower) {
+		Set<String> extra = normalize(narrower);
+		extra.removeAll(normalize(broader));
+		return extra;
+	}
+
+	static Set<String> normalize(Collection<String> values) {
+		Set<String> normalized = new TreeSet<String>();
+		if (values != null)
+			for (String value : values)
+				if (!normalize(value).isEmpty())
+					normalized.add(normalize(value));
+		return normalized;
+	}
+
+	static String normalize(String value) {
+		return value == null ? "" : value.trim().toLowerCase(Locale.ROOT);
+	}
+}
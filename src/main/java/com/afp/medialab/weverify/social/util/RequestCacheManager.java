@@ -1,11 +1,13 @@
 package com.afp.medialab.weverify.social.util;
 
+import java.io.IOException;
 import java.util.Arrays;
 import java.util.Calendar;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
@@ -25,6 +27,7 @@ import com.afp.medialab.weverify.social.dao.service.CollectService;
 import com.afp.medialab.weverify.social.model.CollectRequest;
 import com.afp.medialab.weverify.social.model.CollectResponse;
 import com.afp.medialab.weverify.social.model.Status;
+import com.afp.medialab.weverify.social.twint.ESOperations;
 import com.afp.medialab.weverify.social.twint.TwintThreadGroup;
 
 @Component
@@ -41,6 +44,15 @@ public class RequestCacheManager {
 	@Autowired
 	private TwintThreadGroup ttg;
 
+	@Autowired
+	private RequestCoverageIndex coverageIndex;
+
+	@Autowired
+	private ESOperations esOperations;
+
+	@Autowired
+	private GapPlanner gapPlanner;
+
 	public String getRecordedSessionId(CollectRequest collectRequest) {
 		String sessionId = null;
 
@@ -58,6 +70,24 @@ public class RequestCacheManager {
 		// If exist exactly the same request ?
 
 		CollectHistory collectHistory = collectService.createNewCollectHistory();
+		RequestCoverageIndex.Coverage coverage = coverageIndex.coverage(collectRequest);
+		if (coverage != null) {
+			// Same criteria already collected, no need to search the database
+			List<DateRange> rangesToProcess = gapPlanner.plan(coverage.getGaps());
+			collectHistory = rangesToProcess.isEmpty() ? reusePreviousRequest(coverage.getSession())
+					: processRanges(collectHistory, collectRequest, rangesToProcess);
+			return new CollectResponse(collectHistory);
+		}
+		RequestCoverageIndex.Coverage broader = coverageIndex.broaderCoverage(collectRequest);
+		if (broader != null) {
+			// Narrower than a collected search, filter its tweets
+			try {
+				String view = esOperations.createFilteredView(broader.getCriteria(), collectRequest);
+				return new CollectResponse(reuseFilteredView(broader.getSession(), view));
+			} catch (IOException e) {
+				Logger.error("Cannot create filtered view, collect the request", e);
+			}
+		}
 		Set<Request> similarRequests = similarInCache(collectRequest);
 		Set<Request> previousMatch = exactRequests(similarRequests, collectRequest);
 		if (previousMatch != null && !previousMatch.isEmpty()) {
@@ -74,7 +104,7 @@ public class RequestCacheManager {
 		return collectResponse;
 	}
 
-	private CollectHistory reusePreviousSessionId(Set<Request> previousMatch) {
+	private String reusePreviousSessionId(Set<Request> previousMatch) {
 
 		if (previousMatch.isEmpty())
 			return null;
@@ -85,9 +115,7 @@ public class RequestCacheManager {
 			Logger.warn("Similar Request have several collect Id");
 
 		CollectHistory collectHistoryReuse = requests.get(0).getCollectHistory();
-		CollectHistory collectHistory = collectService.createNewCollectHistory(collectHistoryReuse.getSession());
-
-		return collectHistory;
+		return collectHistoryReuse.getSession();
 	}
 
 	@SafeVarargs
@@ -169,7 +197,10 @@ public class RequestCacheManager {
 		filterRequest.addAll(request.stream().filter(e -> e.getKeywordList().stream().allMatch(keywords::contains))
 				.filter(e -> e.getUserList().stream().allMatch(userList::contains))
 				.filter(e -> e.getBannedWords().stream().allMatch(banneWords::contains))
-				.filter(e -> e.getVerified().equals(collectRequest.isVerified())).collect(Collectors.toSet()));
+				.filter(e -> e.getVerified().equals(collectRequest.isVerified()))
+				.filter(e -> Objects.equals(e.getMedia(), collectRequest.getMedia()))
+				.filter(e -> Objects.equals(e.getRetweetsHandling(), collectRequest.getRetweetsHandling()))
+				.collect(Collectors.toSet()));
 
 		Set<Request> filterRequest2 = new HashSet<Request>();
 		filterRequest2.addAll(filterRequest);
@@ -237,18 +268,11 @@ public class RequestCacheManager {
 			existingDateRanges.add(dateRange);
 		}
 
-		List<DateRange> rangesToProcess = rangeDeltaToProcess.rangeToProcess(existingDateRanges, requestDateRange);
-		List<CollectRequest> requestsToPerform = new LinkedList<CollectRequest>();
+		List<DateRange> rangesToProcess = gapPlanner
+				.plan(rangeDeltaToProcess.rangeToProcess(existingDateRanges, requestDateRange));
 		// This is a new reques
 		if (!rangesToProcess.isEmpty()) {
-			Logger.info("Process twint ranges : " + rangesToProcess.size());
-			for (DateRange range : rangesToProcess) {
-				CollectRequest request = runNewTwintRequest(collectHistory, collectRequest, range);
-				requestsToPerform.add(request);
-			}
-			collectService.save_collectHistory(collectHistory);
-			ttg.callTwintMultiThreaded(collectHistory, requestsToPerform);
-
+			collectHistory = processRanges(collectHistory, collectRequest, rangesToProcess);
 		} else {
 			collectHistory = reusePreviousRequest(requests);
 		}
@@ -256,8 +280,33 @@ public class RequestCacheManager {
 		return collectHistory;
 	}
 
+	/**
+	 * Run twint on the ranges not collected yet
+	 * 
+	 * @param collectHistory
+	 * @param collectRequest
+	 * @param rangesToProcess
+	 * @return
+	 */
+	private CollectHistory processRanges(CollectHistory collectHistory, CollectRequest collectRequest,
+			List<DateRange> rangesToProcess) {
+		Logger.info("Process twint ranges : " + rangesToProcess.size());
+		List<CollectRequest> requestsToPerform = new LinkedList<CollectRequest>();
+		for (DateRange range : rangesToProcess) {
+			CollectRequest request = runNewTwintRequest(collectHistory, collectRequest, range);
+			requestsToPerform.add(request);
+		}
+		collectService.save_collectHistory(collectHistory);
+		ttg.callTwintMultiThreaded(collectHistory, requestsToPerform);
+		return collectHistory;
+	}
+
 	private CollectHistory reusePreviousRequest(Set<Request> requests) {
-		CollectHistory collectHistory = reusePreviousSessionId(requests);
+		return reusePreviousRequest(reusePreviousSessionId(requests));
+	}
+
+	private CollectHistory reusePreviousRequest(String session) {
+		CollectHistory collectHistory = collectService.createNewCollectHistory(session);
 		// Request have been done already these elk
 		collectHistory.setStatus(Status.Done);
 		collectHistory.setMessage("Request already processed, no scrapping, see search engine");
@@ -266,6 +315,13 @@ public class RequestCacheManager {
 
 	}
 
+	private CollectHistory reuseFilteredView(String session, String view) {
+		CollectHistory collectHistory = reusePreviousRequest(session);
+		collectHistory.setMessage("Request answered from already collected tweets, no scrapping, see search engine alias "
+				+ view);
+		return collectHistory;
+	}
+
 	/**
 	 * Run twin with a new request
 	 * 
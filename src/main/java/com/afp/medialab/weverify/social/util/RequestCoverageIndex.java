@@ -0,0 +1,320 @@
+package com.afp.medialab.weverify.social.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.annotation.PostConstruct;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.afp.medialab.weverify.social.dao.entity.CollectHistory;
+import com.afp.medialab.weverify.social.dao.entity.Request;
+import com.afp.medialab.weverify.social.dao.repository.RequestInterface;
+import com.afp.medialab.weverify.social.model.CollectRequest;
+import com.afp.medialab.weverify.social.model.Status;
+
+/**
+ * Time ranges already collected for each {@link QuerySignature} fingerprint.
+ *
+ * The index is loaded from the database at startup and kept up to date by
+ * {@link com.afp.medialab.weverify.social.dao.service.CollectService} each
+ * time a collect is saved, merged or fails, so that the requests made with
+ * exactly the same criteria are answered without any database query. Ranges
+ * of a fingerprint are kept in an {@link IntervalSet}. A fingerprint missing
+ * from the index, collected by another instance for example, is looked for in
+ * the database with a single indexed query.
+ *
+ * Fingerprints are also listed by keyword to find quickly the broader queries
+ * which may answer a narrower one, see {@link QuerySubsumption}.
+ *
+ * @author Medialab
+ */
+@Component
+public class RequestCoverageIndex {
+
+	private static Logger Logger = LoggerFactory.getLogger(RequestCoverageIndex.class);
+
+	private final Map<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+	private final Map<String, Set<String>> fingerprintsByKeyword = new ConcurrentHashMap<String, Set<String>>();
+
+	@Autowired
+	private RequestInterface requestInterface;
+
+	@PostConstruct
+	public void warmUp() {
+		List<Request> requests = requestInterface.findCollectedRequests(Status.Error.toString());
+		List<Request> withoutFingerprint = new ArrayList<Request>();
+		for (Request request : requests) {
+			if (request.getFingerprint() == null) {
+				// saved before fingerprints
+				request.updateFingerprint();
+				withoutFingerprint.add(request);
+			}
+			add(request, request.getCollectHistory().getSession());
+		}
+		if (!withoutFingerprint.isEmpty()) {
+			Logger.info("Save the fingerprint of {} requests", withoutFingerprint.size());
+			requestInterface.saveAll(withoutFingerprint);
+		}
+		Logger.info("Coverage index loaded with {} requests for {} fingerprints", requests.size(), entries.size());
+	}
+
+	/**
+	 * Index the requests of a saved collect
+	 *
+	 * @param collectHistory
+	 */
+	public void add(CollectHistory collectHistory) {
+		if (collectHistory.getStatus() == Status.Error)
+			return;
+		for (Request request : collectHistory.getRequests())
+			add(request, collectHistory.getSession());
+	}
+
+	public void add(Request request, String session) {
+		if (request.getId() == null || Boolean.TRUE.equals(request.getMerge()))
+			return;
+		String fingerprint = QuerySignature.fingerprint(request);
+		Entry entry = entries.computeIfAbsent(fingerprint, f -> newEntry(request));
+		entry.put(request.getId(), new Collected(session, request.getSince(), request.getUntil()));
+		// listed once the entry is stored, so that it is found by broaderCoverage
+		Set<String> keywords = QuerySubsumption.normalize(entry.criteria.getKeywordList());
+		if (keywords.isEmpty())
+			keywords.add("");
+		for (String keyword : keywords)
+			fingerprintsByKeyword.computeIfAbsent(keyword, k -> ConcurrentHashMap.newKeySet()).add(fingerprint);
+	}
+
+	private Entry newEntry(Request request) {
+		CollectRequest criteria = new CollectRequest(request);
+		criteria.setKeywordList(sorted(request.getKeywordList()));
+		criteria.setBannedWords(sorted(request.getBannedWords()));
+		criteria.setUserList(sorted(request.getUserList()));
+		criteria.setFrom(null);
+		criteria.setUntil(null);
+		return new Entry(criteria);
+	}
+
+	private static TreeSet<String> sorted(Set<String> values) {
+		return values == null ? new TreeSet<String>() : new TreeSet<String>(values);
+	}
+
+	/**
+	 * Forget a request merged into a larger one
+	 *
+	 * @param request
+	 */
+	public void remove(Request request) {
+		Entry entry = entries.get(QuerySignature.fingerprint(request));
+		if (entry != null && request.getId() != null)
+			entry.remove(request.getId());
+	}
+
+	/**
+	 * Forget the requests of a failed collect
+	 *
+	 * @param session
+	 */
+	public void removeSession(String session) {
+		for (Entry entry : entries.values())
+			entry.removeSession(session);
+	}
+
+	/**
+	 * @param collectRequest
+	 * @return what is already collected for the criteria of the request, null if
+	 *         no collect with the same fingerprint overlaps its time range
+	 */
+	public Coverage coverage(CollectRequest collectRequest) {
+		String fingerprint = QuerySignature.fingerprint(collectRequest);
+		Entry entry = entries.get(fingerprint);
+		if (entry == null)
+			entry = load(fingerprint);
+		if (entry == null)
+			return null;
+		if (collectRequest.isDisableTimeRange())
+			return entry.any();
+		return entry.coverage(collectRequest.getFrom().getTime(), collectRequest.getUntil().getTime());
+	}
+
+	/**
+	 * Look for a broader query already collected on the whole time range of the
+	 * request. When several match, the most specific one is chosen.
+	 *
+	 * @param collectRequest
+	 * @return coverage of the broader query, null if there is none
+	 */
+	public Coverage broaderCoverage(CollectRequest collectRequest) {
+		if (collectRequest.isDisableTimeRange())
+			return null;
+		String fingerprint = QuerySignature.fingerprint(collectRequest);
+		Set<String> candidates = new TreeSet<String>();
+		for (String keyword : QuerySubsumption.normalize(collectRequest.getKeywordList()))
+			candidates.addAll(fingerprintsByKeyword.getOrDefault(keyword, Collections.<String>emptySet()));
+		candidates.addAll(fingerprintsByKeyword.getOrDefault("", Collections.<String>emptySet()));
+		candidates.remove(fingerprint);
+
+		Coverage broader = null;
+		int specificity = -1;
+		for (String candidate : candidates) {
+			Entry entry = entries.get(candidate);
+			if (entry == null || !QuerySubsumption.subsumes(entry.criteria, collectRequest))
+				continue;
+			Coverage coverage = entry.coverage(collectRequest.getFrom().getTime(), collectRequest.getUntil().getTime());
+			int candidateSpecificity = specificity(entry.criteria);
+			if (coverage != null && coverage.isComplete() && candidateSpecificity > specificity) {
+				broader = coverage;
+				specificity = candidateSpecificity;
+			}
+		}
+		return broader;
+	}
+
+	private static int specificity(CollectRequest criteria) {
+		int specificity = criteria.getKeywordList().size() + criteria.getBannedWords().size();
+		if (!criteria.getUserList().isEmpty())
+			specificity++;
+		if (!QuerySubsumption.normalize(criteria.getLang()).isEmpty())
+			specificity++;
+		return specificity;
+	}
+
+	private Entry load(String fingerprint) {
+		for (Request request : requestInterface.findCollectedRequestsByFingerprint(fingerprint,
+				Status.Error.toString()))
+			add(request, request.getCollectHistory().getSession());
+		return entries.get(fingerprint);
+	}
+
+	/**
+	 * Session to reuse and ranges left to collect
+	 */
+	public static class Coverage {
+
+		private final CollectRequest criteria;
+		private final String session;
+		private final List<DateRange> gaps;
+
+		Coverage(CollectRequest criteria, String session, List<DateRange> gaps) {
+			this.criteria = criteria;
+			this.session = session;
+			this.gaps = gaps;
+		}
+
+		/**
+		 * @return criteria of the collected query, without time range
+		 */
+		public CollectRequest getCriteria() {
+			return criteria;
+		}
+
+		/**
+		 * @return latest session which collected a part of the range
+		 */
+		public String getSession() {
+			return session;
+		}
+
+		/**
+		 * @return ranges not collected yet, in ascending order
+		 */
+		public List<DateRange> getGaps() {
+			return gaps;
+		}
+
+		public boolean isComplete() {
+			return gaps.isEmpty();
+		}
+	}
+
+	private static class Collected {
+
+		private final String session;
+		private final Long since;
+		private final Long until;
+
+		Collected(String session, Date since, Date until) {
+			this.session = session;
+			this.since = since == null ? null : since.getTime();
+			this.until = until == null ? null : until.getTime();
+		}
+
+		boolean isTimed() {
+			return since != null && until != null;
+		}
+	}
+
+	/**
+	 * Requests of one fingerprint, by id, and the union of their ranges
+	 */
+	private static class Entry {
+
+		private final CollectRequest criteria;
+		private final Map<Integer, Collected> requests = new HashMap<Integer, Collected>();
+		private IntervalSet ranges = IntervalSet.empty();
+
+		Entry(CollectRequest criteria) {
+			this.criteria = criteria;
+		}
+
+		synchronized void put(Integer id, Collected collected) {
+			Collected previous = requests.put(id, collected);
+			if (previous != null)
+				rebuild();
+			else if (collected.isTimed())
+				ranges = ranges.union(IntervalSet.of(collected.since, collected.until));
+		}
+
+		synchronized void remove(Integer id) {
+			if (requests.remove(id) != null)
+				rebuild();
+		}
+
+		synchronized void removeSession(String session) {
+			if (requests.values().removeIf(collected -> collected.session.equals(session)))
+				rebuild();
+		}
+
+		synchronized Coverage any() {
+			Integer latest = null;
+			for (Integer id : requests.keySet())
+				if (latest == null || id > latest)
+					latest = id;
+			return latest == null ? null
+					: new Coverage(criteria, requests.get(latest).session, Collections.<DateRange>emptyList());
+		}
+
+		synchronized Coverage coverage(long from, long until) {
+			Integer latest = null;
+			for (Map.Entry<Integer, Collected> request : requests.entrySet()) {
+				Collected collected = request.getValue();
+				if (collected.isTimed() && collected.since <= until && collected.until >= from
+						&& (latest == null || request.getKey() > latest))
+					latest = request.getKey();
+			}
+			if (latest == null)
+				return null;
+
+			List<DateRange> gaps = IntervalSet.of(from, until).difference(ranges).toDateRanges();
+			return new Coverage(criteria, requests.get(latest).session, gaps);
+		}
+
+		private void rebuild() {
+			List<DateRange> collectedRanges = new ArrayList<DateRange>(requests.size());
+			for (Collected collected : requests.values())
+				if (collected.isTimed())
+					collectedRanges.add(new DateRange(new Date(collected.since), new Date(collected.until)));
+			ranges = IntervalSet.of(collectedRanges);
+		}
+	}
+}
@@ -0,0 +1,17 @@
+-- Time slices of the collects, resumed at startup (CollectJob entity)
+-- Apply before deploying with hibernate.ddl-auto: none (default and prod profiles)
+
+CREATE TABLE IF NOT EXISTS `collectJob` (
+  `id` int(11) NOT NULL AUTO_INCREMENT,
+  `session` varchar(255) DEFAULT NULL,
+  `query` varchar(4096) DEFAULT NULL,
+  `since` datetime(6) DEFAULT NULL,
+  `until` datetime(6) DEFAULT NULL,
+  `state` varchar(255) DEFAULT NULL,
+  `attempts` int(11) DEFAULT NULL,
+  `count` int(11) DEFAULT NULL,
+  `updated` datetime(6) DEFAULT NULL,
+  PRIMARY KEY (`id`),
+  KEY `collectJob_session` (`session`),
+  KEY `collectJob_state` (`state`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;
@@ -0,0 +1,6 @@
+-- Fingerprint of the criteria of a request (Request entity), see QuerySignature
+-- Apply before deploying with hibernate.ddl-auto: none (default and prod profiles)
+-- Existing requests are fingerprinted by the application at startup
+
+ALTER TABLE `request` ADD COLUMN `fingerprint` varchar(32) DEFAULT NULL;
+CREATE INDEX `request_fingerprint` ON `request` (`fingerprint`);
@@ -0,0 +1,101 @@
+package com.afp.medialab.weverify.social;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.afp.medialab.weverify.social.dao.entity.CollectJob;
+import com.afp.medialab.weverify.social.dao.repository.CollectJobInterface;
+import com.afp.medialab.weverify.social.dao.service.CollectJobService;
+import com.afp.medialab.weverify.social.model.CollectRequest;
+import com.afp.medialab.weverify.social.model.Status;
+
+public class CollectJobServiceTest {
+
+	private CollectJobService jobService;
+	private CollectJobInterface repository;
+	private AtomicReference<CollectJob> saved = new AtomicReference<CollectJob>();
+
+	@Before
+	public void init() {
+		repository = mock(CollectJobInterface.class);
+		when(repository.save(any(CollectJob.class))).thenAnswer(invocation -> {
+			CollectJob job = invocation.getArgument(0);
+			job.setId(1);
+			saved.set(job);
+			return job;
+		});
+		jobService = new CollectJobService();
+		ReflectionTestUtils.setField(jobService, "collectJobInterface", repository);
+		ReflectionTestUtils.setField(jobService, "retentionDays", 7);
+	}
+
+	private static CollectRequest request() {
+		CollectRequest request = new CollectRequest();
+		request.setKeywordList(new TreeSet<String>());
+		request.getKeywordList().add("#fake");
+		request.setUserList(new TreeSet<String>());
+		request.getUserList().add("afpfr");
+		request.setLang("fr");
+		request.setMedia("image");
+		request.setVerified(true);
+		return request;
+	}
+
+	@Test
+	public void testSliceIsReadBack() {
+		CollectRequest request = request();
+		request.setFrom(new Date(1583020800123L));
+		request.setUntil(new Date(1583107200456L));
+		assertEquals(Integer.valueOf(1), jobService.createJob("session", request));
+
+		CollectJob job = saved.get();
+		assertEquals(Status.Pending, job.getState());
+		CollectRequest read = jobService.toCollectRequest(job);
+		assertEquals(request.getKeywordList(), read.getKeywordList());
+		assertEquals(request.getUserList(), read.getUserList());
+		assertEquals("fr", read.getLang());
+		assertEquals("image", read.getMedia());
+		assertTrue(read.isVerified());
+		// dates are kept to the millisecond, whatever the time zone
+		assertEquals(request.getFrom(), read.getFrom());
+		assertEquals(request.getUntil(), read.getUntil());
+		assertEquals(false, read.isDisableTimeRange());
+	}
+
+	@Test
+	public void testSliceWithoutTimeRange() {
+		CollectRequest request = request();
+		request.setDisableTimeRange(true);
+		jobService.createJob("session", request);
+
+		CollectRequest read = jobService.toCollectRequest(saved.get());
+		assertEquals(true, read.isDisableTimeRange());
+		assertNull(read.getFrom());
+	}
+
+	@Test
+	public void testOnlyOldFinishedSlicesArePurged() {
+		jobService.purgeFinishedJobs();
+		ArgumentCaptor<Date> before = ArgumentCaptor.forClass(Date.class);
+		verify(repository).deleteCollectJobs(eq(Arrays.asList(Status.Done.toString(), Status.Error.toString())),
+				before.capture());
+		long age = System.currentTimeMillis() - before.getValue().getTime();
+		assertTrue(age >= 7 * 86400000L && age < 8 * 86400000L);
+	}
+}
@@ -0,0 +1,115 @@
+package com.afp.medialab.weverify.social;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.DocWriteRequest;
+import org.elasticsearch.action.DocWriteResponse.Result;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkItemResponse.Failure;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.update.UpdateResponse;
+import org.elasticsearch.common.util.concurrent.EsRejectedExecutionException;
+import org.elasticsearch.index.engine.DocumentMissingException;
+import org.elasticsearch.index.shard.ShardId;
+import org.junit.Test;
+
+import com.afp.medialab.weverify.social.twint.ESBulkIndexer;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class ESBulkIndexerTest {
+
+	private static final ShardId SHARD = new ShardId("tsnatweets", "uuid", 0);
+
+	private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+	/**
+	 * Cluster rejecting every item it sees for the first time, and missing the
+	 * documents of the given ids
+	 */
+	private static class FakeCluster implements BiConsumer<BulkRequest, ActionListener<BulkResponse>> {
+
+		private final Set<String> seen = ConcurrentHashMap.newKeySet();
+		private final Set<String> missing;
+		private final AtomicInteger nbBulks = new AtomicInteger();
+		private final AtomicLong maxBytes = new AtomicLong();
+
+		FakeCluster(Set<String> missing) {
+			this.missing = missing;
+		}
+
+		@Override
+		public void accept(BulkRequest request, ActionListener<BulkResponse> listener) {
+			nbBulks.incrementAndGet();
+			maxBytes.accumulateAndGet(request.estimatedSizeInBytes(), Math::max);
+			List<BulkItemResponse> items = new ArrayList<>();
+			int i = 0;
+			for (DocWriteRequest<?> update : request.requests()) {
+				String id = update.id();
+				if (seen.add(id))
+					items.add(failure(i, id, new EsRejectedExecutionException("rejected")));
+				else if (missing.contains(id))
+					items.add(failure(i, id, new DocumentMissingException(SHARD, "doc", id)));
+				else
+					items.add(new BulkItemResponse(i, DocWriteRequest.OpType.UPDATE,
+							new UpdateResponse(SHARD, "doc", id, 1, Result.UPDATED)));
+				i++;
+			}
+			listener.onResponse(new BulkResponse(items.toArray(new BulkItemResponse[0]), 1));
+		}
+
+		private BulkItemResponse failure(int i, String id, Exception e) {
+			return new BulkItemResponse(i, DocWriteRequest.OpType.UPDATE, new Failure("tsnatweets", "doc", id, e));
+		}
+	}
+
+	private ESBulkIndexer indexer(FakeCluster cluster, int maxActions, long maxBytes) {
+		return new ESBulkIndexer(cluster, "tsnatweets", "doc", meterRegistry, maxActions, maxBytes, 60000, 1, 1, 3);
+	}
+
+	private double items(String outcome) {
+		return meterRegistry.get("es.bulk.items").tag("outcome", outcome).counter().count();
+	}
+
+	@Test
+	public void testRetriesRejectedItemsAndCountsFailures() throws InterruptedException {
+		FakeCluster cluster = new FakeCluster(ConcurrentHashMap.newKeySet());
+		cluster.missing.add("7");
+		ESBulkIndexer indexer = indexer(cluster, 10, 1024 * 1024);
+		for (int i = 0; i < 25; i++)
+			indexer.update(Integer.toString(i), "{\"wit\":[]}".getBytes(StandardCharsets.UTF_8));
+		indexer.flush();
+
+		assertEquals(24, items("success"), 0);
+		assertEquals(1, items("failure"), 0);
+		indexer.close();
+	}
+
+	@Test
+	public void testFlushBySize() throws InterruptedException {
+		FakeCluster cluster = new FakeCluster(ConcurrentHashMap.newKeySet());
+		ESBulkIndexer indexer = indexer(cluster, 1000, 1000);
+		for (int i = 0; i < 100; i++)
+			indexer.update(Integer.toString(i),
+					("{\"wit\":[{\"word\":\"word" + i + "\",\"nbOccurences\":1}]}").getBytes(StandardCharsets.UTF_8));
+		indexer.flush();
+		assertEquals(100, items("success"), 0);
+		// a bulk is sent as soon as the queued updates reach 1000 bytes
+		assertTrue(cluster.nbBulks.get() > 2);
+		assertTrue(cluster.maxBytes.get() < 1100);
+		indexer.close();
+	}
+}
@@ -61,9 +61,8 @@ public class ElasticSearchQueryTest {
 		ObjectMapper objectMapper = new ObjectMapper();
 		CollectRequest collectRequest = objectMapper.readValue(donalTrumpQuery, CollectRequest.class);
 
-		List<TwintModel> models = esOperations.enrichWithTweetie(collectRequest);
-		esOperations.indexWordsObj(models);
-		System.out.println("ok " + models.size());
+		long nbTweets = esOperations.enrichWithTweetie(collectRequest, null);
+		System.out.println("ok " + nbTweets);
 
 	}
 
@@ -0,0 +1,64 @@
+package com.afp.medialab.weverify.social;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.afp.medialab.weverify.social.util.DateRange;
+import com.afp.medialab.weverify.social.util.GapPlanner;
+
+public class GapPlannerTest {
+
+	private static final long MINUTE = 60000L;
+	private static final long DAY = 86400000L;
+
+	private final GapPlanner planner = new GapPlanner(60, 5, 15);
+
+	@Test
+	public void testCloseGapsAreMergedAndTinyGapsDropped() {
+		List<DateRange> gaps = new ArrayList<DateRange>();
+		// 30 gaps of 10 minutes, 20 minutes apart
+		for (int i = 0; i < 30; i++)
+			gaps.add(range(i * 30 * MINUTE, i * 30 * MINUTE + 10 * MINUTE));
+		// isolated gap too small to be worth a process
+		gaps.add(range(DAY, DAY + 2 * MINUTE));
+		gaps.add(range(2 * DAY, 2 * DAY + 6 * MINUTE));
+
+		List<DateRange> planned = planner.plan(gaps);
+		assertEquals(2, planned.size());
+		assertRange(0, 29 * 30 * MINUTE + 10 * MINUTE, planned.get(0));
+		assertRange(2 * DAY, 2 * DAY + 6 * MINUTE, planned.get(1));
+	}
+
+	@Test
+	public void testLongGapsAreSliced() {
+		List<DateRange> gaps = new ArrayList<DateRange>();
+		gaps.add(range(0, 40 * DAY));
+		List<DateRange> planned = planner.plan(gaps);
+		assertEquals(3, planned.size());
+		assertEquals(new Date(0), planned.get(0).getStartDate());
+		assertEquals(new Date(40 * DAY), planned.get(2).getEndDate());
+		for (int i = 0; i < planned.size(); i++) {
+			DateRange slice = planned.get(i);
+			assertTrue(slice.getEndDate().getTime() - slice.getStartDate().getTime() <= 15 * DAY);
+			if (i > 0)
+				assertEquals(planned.get(i - 1).getEndDate(), slice.getStartDate());
+		}
+
+		assertTrue(planner.plan(new ArrayList<DateRange>()).isEmpty());
+	}
+
+	private static void assertRange(long start, long end, DateRange range) {
+		assertEquals(new Date(start), range.getStartDate());
+		assertEquals(new Date(end), range.getEndDate());
+	}
+
+	private static DateRange range(long start, long end) {
+		return new DateRange(new Date(start), new Date(end));
+	}
+}
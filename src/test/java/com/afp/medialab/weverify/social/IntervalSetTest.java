@@ -0,0 +1,161 @@
+package com.afp.medialab.weverify.social;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.afp.medialab.weverify.social.util.DateRange;
+import com.afp.medialab.weverify.social.util.IntervalSet;
+import com.afp.medialab.weverify.social.util.RangeDeltaToProcess;
+
+/**
+ * Operations checked on random sets against a model with one boolean by
+ * millisecond.
+ */
+public class IntervalSetTest {
+
+	private static final int DOMAIN = 200;
+	private static final int RUNS = 2000;
+
+	private final Random random = new Random(42);
+
+	@Test
+	public void testOperationsMatchModel() {
+		for (int run = 0; run < RUNS; run++) {
+			List<DateRange> a = randomRanges(random.nextInt(8));
+			List<DateRange> b = randomRanges(random.nextInt(8));
+			IntervalSet setA = IntervalSet.of(a);
+			IntervalSet setB = IntervalSet.of(b);
+			boolean[] modelA = model(a);
+			boolean[] modelB = model(b);
+
+			boolean[] union = new boolean[DOMAIN];
+			boolean[] intersection = new boolean[DOMAIN];
+			boolean[] difference = new boolean[DOMAIN];
+			for (int i = 0; i < DOMAIN; i++) {
+				union[i] = modelA[i] || modelB[i];
+				intersection[i] = modelA[i] && modelB[i];
+				difference[i] = modelA[i] && !modelB[i];
+			}
+			String message = setA + " " + setB;
+			assertEquals(message, fromModel(modelA), setA);
+			assertEquals(message, fromModel(union), setA.union(setB));
+			assertEquals(message, fromModel(intersection), setA.intersection(setB));
+			assertEquals(message, fromModel(difference), setA.difference(setB));
+			assertCoalesced(setA.union(setB));
+			assertCoalesced(setA.difference(setB));
+
+			long start = random.nextInt(DOMAIN);
+			long end = start + random.nextInt(DOMAIN - (int) start + 1);
+			boolean covered = true;
+			boolean overlaps = false;
+			for (long i = start; i < end; i++) {
+				covered &= modelA[(int) i];
+				overlaps |= modelA[(int) i];
+			}
+			assertEquals(message + " " + start + "-" + end, covered, setA.covers(start, end));
+			assertEquals(message + " " + start + "-" + end, overlaps, setA.overlaps(start, end));
+		}
+	}
+
+	@Test
+	public void testAlgebraLaws() {
+		for (int run = 0; run < RUNS; run++) {
+			IntervalSet a = IntervalSet.of(randomRanges(random.nextInt(8)));
+			IntervalSet b = IntervalSet.of(randomRanges(random.nextInt(8)));
+			IntervalSet c = IntervalSet.of(randomRanges(random.nextInt(8)));
+			assertEquals(a.union(b), b.union(a));
+			assertEquals(a.intersection(b), b.intersection(a));
+			assertEquals(a, a.difference(b).union(a.intersection(b)));
+			assertTrue(a.difference(b).intersection(b).isEmpty());
+			assertEquals(a.union(b).union(c), a.union(b.union(c)));
+			assertEquals(a.intersection(b.union(c)), a.intersection(b).union(a.intersection(c)));
+			assertEquals(a.length() + b.length(), a.union(b).length() + a.intersection(b).length());
+		}
+	}
+
+	@Test
+	public void testOverlappingRangesAreCoalesced() {
+		List<DateRange> ranges = new ArrayList<DateRange>();
+		ranges.add(range(50, 80));
+		ranges.add(range(0, 30));
+		ranges.add(range(20, 40));
+		ranges.add(range(40, 45));
+		List<DateRange> gaps = new RangeDeltaToProcess().rangeToProcess(ranges, range(10, 100));
+		assertEquals(2, gaps.size());
+		assertEquals(range(45, 50).getStartDate(), gaps.get(0).getStartDate());
+		assertEquals(range(45, 50).getEndDate(), gaps.get(0).getEndDate());
+		assertEquals(new Date(80), gaps.get(1).getStartDate());
+		assertEquals(new Date(100), gaps.get(1).getEndDate());
+	}
+
+	/**
+	 * Gaps of a request over thousands of historic ranges, given by decreasing
+	 * start
+	 */
+	@Test
+	public void testThousandsOfRanges() {
+		int nbRanges = 10000;
+		List<DateRange> existing = new ArrayList<DateRange>();
+		for (int i = 0; i < nbRanges; i++)
+			existing.add(range(i * 100L, i * 100L + 60 + random.nextInt(60)));
+		Collections.reverse(existing);
+		List<DateRange> gaps = new RangeDeltaToProcess().rangeToProcess(existing,
+				range(-1000, nbRanges * 100L + 1000));
+
+		boolean[] covered = new boolean[(int) (nbRanges * 100L + 2000)];
+		for (DateRange range : existing)
+			for (long t = range.getStartDate().getTime(); t < range.getEndDate().getTime(); t++)
+				covered[(int) t + 1000] = true;
+		List<DateRange> expected = new ArrayList<DateRange>();
+		for (int t = 0; t < covered.length; t++)
+			if (!covered[t])
+				expected.add(range(t - 1000, t - 999));
+		assertEquals(IntervalSet.of(expected), IntervalSet.of(gaps));
+		assertCoalesced(IntervalSet.of(gaps));
+	}
+
+	private List<DateRange> randomRanges(int n) {
+		List<DateRange> ranges = new ArrayList<DateRange>();
+		for (int i = 0; i < n; i++) {
+			long start = random.nextInt(DOMAIN);
+			ranges.add(range(start, start + random.nextInt(Math.min(40, DOMAIN - (int) start) + 1)));
+		}
+		return ranges;
+	}
+
+	private static boolean[] model(List<DateRange> ranges) {
+		boolean[] model = new boolean[DOMAIN];
+		for (DateRange range : ranges)
+			for (long t = range.getStartDate().getTime(); t < range.getEndDate().getTime(); t++)
+				model[(int) t] = true;
+		return model;
+	}
+
+	private static IntervalSet fromModel(boolean[] model) {
+		List<DateRange> ranges = new ArrayList<DateRange>();
+		for (int t = 0; t < DOMAIN; t++)
+			if (model[t])
+				ranges.add(range(t, t + 1));
+		return IntervalSet.of(ranges);
+	}
+
+	private static void assertCoalesced(IntervalSet set) {
+		for (int i = 0; i < set.size(); i++) {
+			assertTrue(set.toString(), set.start(i) < set.end(i));
+			if (i > 0)
+				assertTrue(set.toString(), set.end(i - 1) < set.start(i));
+		}
+	}
+
+	private static DateRange range(long start, long end) {
+		return new DateRange(new Date(start), new Date(end));
+	}
+}
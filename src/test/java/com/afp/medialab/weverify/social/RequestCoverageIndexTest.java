@@ -0,0 +1,153 @@
+package com.afp.medialab.weverify.social;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.TreeSet;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.afp.medialab.weverify.social.dao.entity.CollectHistory;
+import com.afp.medialab.weverify.social.dao.entity.Request;
+import com.afp.medialab.weverify.social.dao.repository.RequestInterface;
+import com.afp.medialab.weverify.social.model.CollectRequest;
+import com.afp.medialab.weverify.social.util.DateRange;
+import com.afp.medialab.weverify.social.util.QuerySignature;
+import com.afp.medialab.weverify.social.util.QuerySubsumption;
+import com.afp.medialab.weverify.social.util.RequestCoverageIndex;
+
+public class RequestCoverageIndexTest {
+
+	private RequestInterface requestInterface;
+	private RequestCoverageIndex index;
+
+	@Before
+	public void init() {
+		requestInterface = mock(RequestInterface.class);
+		index = new RequestCoverageIndex();
+		ReflectionTestUtils.setField(index, "requestInterface", requestInterface);
+		index.add(request(1, "Fake News", 0, 100), "s1");
+		index.add(request(2, "news fake", 150, 200), "s2");
+		index.add(request(3, "news fake", 180, 300), "s3");
+	}
+
+	@Test
+	public void testGapsOfSameCriteria() {
+		RequestCoverageIndex.Coverage coverage = index.coverage(collectRequest("fake news", 50, 400));
+		assertEquals("s3", coverage.getSession());
+		List<DateRange> gaps = coverage.getGaps();
+		assertEquals(2, gaps.size());
+		assertRange(100, 150, gaps.get(0));
+		assertRange(300, 400, gaps.get(1));
+
+		coverage = index.coverage(collectRequest("fake news", 160, 250));
+		assertTrue(coverage.isComplete());
+
+		assertNull(index.coverage(collectRequest("fake news", 400, 500)));
+		assertNull(index.coverage(collectRequest("fake", 0, 100)));
+	}
+
+	@Test
+	public void testFailedSessionIsForgotten() {
+		index.removeSession("s3");
+		RequestCoverageIndex.Coverage coverage = index.coverage(collectRequest("fake news", 150, 300));
+		assertEquals("s2", coverage.getSession());
+		assertEquals(1, coverage.getGaps().size());
+		assertRange(200, 300, coverage.getGaps().get(0));
+
+		Request merged = request(1, "fake news", 0, 100);
+		index.remove(merged);
+		assertNull(index.coverage(collectRequest("fake news", 0, 100)));
+	}
+
+	@Test
+	public void testFingerprint() {
+		CollectRequest collectRequest = collectRequest("News FAKE", 0, 100);
+		assertEquals(QuerySignature.fingerprint(collectRequest("fake news", 500, 600)),
+				QuerySignature.fingerprint(collectRequest));
+		assertEquals(QuerySignature.fingerprint(collectRequest), QuerySignature.fingerprint(new Request(collectRequest)));
+		collectRequest.setMedia("image");
+		assertNotEquals(QuerySignature.fingerprint(collectRequest("fake news", 0, 100)),
+				QuerySignature.fingerprint(collectRequest));
+	}
+
+	@Test
+	public void testMissingFingerprintIsLoaded() {
+		CollectHistory collectHistory = new CollectHistory();
+		collectHistory.setSession("s4");
+		Request request = request(4, "fake", 0, 100);
+		collectHistory.addRequest(request);
+		when(requestInterface.findCollectedRequestsByFingerprint(eq(QuerySignature.fingerprint(request)), anyString()))
+				.thenReturn(Collections.singletonList(request));
+
+		assertEquals("s4", index.coverage(collectRequest("fake", 50, 100)).getSession());
+		assertNull(index.coverage(collectRequest("other", 50, 100)));
+	}
+
+	@Test
+	public void testBroaderQueryCoversNarrower() {
+		CollectRequest narrower = collectRequest("fake news covid", 160, 250);
+		narrower.setLang("fr");
+		RequestCoverageIndex.Coverage broader = index.coverage(narrower);
+		assertNull(broader);
+		broader = index.broaderCoverage(narrower);
+		assertEquals("s3", broader.getSession());
+		assertEquals(new TreeSet<String>(Arrays.asList("covid")),
+				QuerySubsumption.extra(broader.getCriteria().getKeywordList(), narrower.getKeywordList()));
+
+		// not collected on the whole range
+		assertNull(index.broaderCoverage(collectRequest("fake news covid", 50, 250)));
+		assertNull(index.broaderCoverage(collectRequest("fake", 160, 250)));
+	}
+
+	@Test
+	public void testSubsumption() {
+		CollectRequest broader = collectRequest("fake", 0, 100);
+		CollectRequest narrower = collectRequest("fake news", 0, 100);
+		narrower.setBannedWords(new TreeSet<String>(Arrays.asList("hoax")));
+		narrower.setUserList(new TreeSet<String>(Arrays.asList("afp")));
+		assertTrue(QuerySubsumption.subsumes(broader, narrower));
+		assertFalse(QuerySubsumption.subsumes(narrower, broader));
+
+		broader.setUserList(new TreeSet<String>(Arrays.asList("afp", "reuters")));
+		assertTrue(QuerySubsumption.subsumes(broader, narrower));
+		narrower.setUserList(new TreeSet<String>());
+		assertFalse(QuerySubsumption.subsumes(broader, narrower));
+
+		broader = collectRequest("fake", 0, 100);
+		broader.setVerified(true);
+		assertFalse(QuerySubsumption.subsumes(broader, narrower));
+	}
+
+	private static void assertRange(long start, long end, DateRange range) {
+		assertEquals(new Date(start), range.getStartDate());
+		assertEquals(new Date(end), range.getEndDate());
+	}
+
+	private static CollectRequest collectRequest(String keywords, long from, long until) {
+		CollectRequest collectRequest = new CollectRequest();
+		collectRequest.setKeywordList(new TreeSet<String>(Arrays.asList(keywords.split(" "))));
+		collectRequest.setFrom(new Date(from));
+		collectRequest.setUntil(new Date(until));
+		return collectRequest;
+	}
+
+	private static Request request(int id, String keywords, long since, long until) {
+		Request request = new Request(collectRequest(keywords, since, until));
+		request.setId(id);
+		return request;
+	}
+}
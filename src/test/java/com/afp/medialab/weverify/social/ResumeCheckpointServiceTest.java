@@ -0,0 +1,78 @@
+package com.afp.medialab.weverify.social;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.util.Date;
+import java.util.TreeSet;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.afp.medialab.weverify.social.model.CollectRequest;
+import com.afp.medialab.weverify.social.twint.ESOperations;
+import com.afp.medialab.weverify.social.twint.ResumeCheckpointService;
+import com.afp.medialab.weverify.social.util.DateRange;
+
+public class ResumeCheckpointServiceTest {
+
+	private ESOperations esOperations;
+	private ResumeCheckpointService checkpoints;
+	private CollectRequest request;
+
+	@Before
+	public void init() {
+		esOperations = mock(ESOperations.class);
+		checkpoints = new ResumeCheckpointService(100);
+		ReflectionTestUtils.setField(checkpoints, "esOperation", esOperations);
+		request = new CollectRequest();
+		request.setKeywordList(new TreeSet<String>());
+		request.getKeywordList().add("fake");
+		request.setFrom(new Date(0));
+		request.setUntil(new Date(100000));
+	}
+
+	@Test
+	public void testWatermarkOnlyMovesBack() throws IOException {
+		assertNull(checkpoints.findWhereIndexingStopped(request));
+
+		when(esOperations.collectedDateRange(any())).thenReturn(new DateRange(new Date(5000), new Date(90000)));
+		assertEquals(new Date(5000), checkpoints.findWhereIndexingStopped(request));
+
+		// the end of the range moves to the watermark, tweets not refreshed yet
+		request.setUntil(new Date(5000));
+		when(esOperations.collectedDateRange(any())).thenReturn(null);
+		assertEquals(new Date(5000), checkpoints.findWhereIndexingStopped(request));
+
+		when(esOperations.collectedDateRange(any())).thenReturn(new DateRange(new Date(2000), new Date(5000)));
+		assertEquals(new Date(2000), checkpoints.findWhereIndexingStopped(request));
+	}
+
+	@Test
+	public void testKeepsWatermarkWhenElasticsearchFails() throws IOException {
+		when(esOperations.collectedDateRange(any())).thenReturn(new DateRange(new Date(5000), new Date(90000)));
+		checkpoints.findWhereIndexingStopped(request);
+		when(esOperations.collectedDateRange(any())).thenThrow(new IOException("timeout"));
+		assertEquals(new Date(5000), checkpoints.findWhereIndexingStopped(request));
+	}
+
+	@Test
+	public void testWatermarkClampedToRangeAndForgotten() throws IOException {
+		when(esOperations.collectedDateRange(any())).thenReturn(new DateRange(new Date(50000), new Date(90000)));
+		checkpoints.findWhereIndexingStopped(request);
+
+		// first part of the remaining range split again
+		CollectRequest first = new CollectRequest(request);
+		first.setUntil(new Date(25000));
+		when(esOperations.collectedDateRange(any())).thenReturn(null);
+		assertEquals(new Date(25000), checkpoints.findWhereIndexingStopped(first));
+
+		checkpoints.forget(request);
+		assertNull(checkpoints.findWhereIndexingStopped(first));
+	}
+}
@@ -0,0 +1,45 @@
+package com.afp.medialab.weverify.social;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.Date;
+
+import org.junit.Test;
+
+import com.afp.medialab.weverify.social.model.CollectRequest;
+import com.afp.medialab.weverify.social.twint.SessionProgress;
+
+public class SessionProgressTest {
+
+	@Test
+	public void testSessionNotFinishedWhileLaunchPending() {
+		SessionProgress progress = new SessionProgress("s1", new Date(), Collections.<CollectRequest>emptyList());
+		progress.launchStarted();
+		progress.launchStarted();
+
+		// first launch, all its slices finish before the second one is split
+		progress.addSubRanges(2);
+		assertFalse(progress.launchDone());
+		assertFalse(progress.subRangeDone(true));
+		assertFalse(progress.subRangeDone(true));
+
+		progress.addSubRanges(1);
+		assertFalse(progress.launchDone());
+		assertTrue(progress.subRangeDone(false));
+	}
+
+	@Test
+	public void testLastLaunchEndsSessionWhenSlicesAreDone() {
+		SessionProgress progress = new SessionProgress("s1", new Date(), Collections.<CollectRequest>emptyList());
+		progress.launchStarted();
+		progress.launchStarted();
+		progress.addSubRanges(1);
+		assertFalse(progress.launchDone());
+		progress.addSubRanges(1);
+		assertFalse(progress.subRangeDone(true));
+		assertFalse(progress.subRangeDone(true));
+		assertTrue(progress.launchDone());
+	}
+}
@@ -0,0 +1,57 @@
+package com.afp.medialab.weverify.social;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.ClassPathResource;
+
+import com.afp.medialab.weverify.social.twint.StopWordsDictionary;
+
+public class StopWordsDictionaryTest {
+
+	private StopWordsDictionary dictionary;
+
+	@Before
+	public void init() throws IOException {
+		dictionary = new StopWordsDictionary(new ClassPathResource("stopwords.json"));
+		dictionary.load();
+	}
+
+	@Test
+	public void testGuessLanguage() {
+		assertEquals("fr", dictionary.guessLanguage(Arrays.asList("le", "president", "est", "dans", "la", "ville")));
+		assertEquals("en", dictionary.guessLanguage(Arrays.asList("the", "president", "is", "in", "the", "city")));
+		assertNull(dictionary.guessLanguage(Arrays.asList("macron", "paris")));
+	}
+
+	@Test
+	public void testStopWords() {
+		assertTrue(dictionary.isStopWord("twitter", null));
+		assertTrue(dictionary.isStopWord("the", "en"));
+		assertFalse(dictionary.isStopWord("the", "fr"));
+		assertFalse(dictionary.isStopWord("president", "en"));
+	}
+
+	@Test
+	public void testPluggableLanguage() throws IOException {
+		dictionary = new StopWordsDictionary(new ByteArrayResource(
+				"{\"glob\":[\"rt\"],\"en\":[\"the\",\"is\"],\"es\":[\"el\",\"es\",\"la\"]}".getBytes("UTF-8")));
+		dictionary.load();
+		assertEquals(2, dictionary.getLanguages().size());
+		assertEquals("es", dictionary.guessLanguage(Arrays.asList("el", "presidente", "es", "mexicano")));
+		assertTrue(dictionary.isStopWord("rt", "es"));
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void testImmutable() {
+		dictionary.getStopWords("en").add("president");
+	}
+}
@@ -0,0 +1,89 @@
+package com.afp.medialab.weverify.social;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Local stand-in for the Twittie GATE service: every "@name" of the posted
+ * document is annotated as a UserID and every "Name Surname" as a Person, with
+ * GATE offsets. Each request waits a fixed latency to mimic a remote call.
+ */
+public class StubGateServer implements AutoCloseable {
+
+	private static final Pattern USER = Pattern.compile("@(\\w+)");
+	private static final Pattern PERSON = Pattern.compile("\\b[A-Z][a-z]+ [A-Z][a-z]+\\b");
+
+	private final HttpServer server;
+	private final AtomicInteger nbRequests = new AtomicInteger();
+
+	public StubGateServer(long latency) throws IOException {
+		server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.setExecutor(Executors.newCachedThreadPool());
+		server.createContext("/gate/process", exchange -> {
+			nbRequests.incrementAndGet();
+			String document = read(exchange.getRequestBody());
+			try {
+				Thread.sleep(latency);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			byte[] response = annotate(document).getBytes(StandardCharsets.UTF_8);
+			exchange.getResponseHeaders().add("Content-Type", "application/json");
+			exchange.sendResponseHeaders(200, response.length);
+			try (OutputStream out = exchange.getResponseBody()) {
+				out.write(response);
+			}
+		});
+		server.start();
+	}
+
+	public String getUrl() {
+		return "http://localhost:" + server.getAddress().getPort()
+				+ "/gate/process?annotations=:Person,:UserID,:Location,:Organization";
+	}
+
+	public int getNbRequests() {
+		return nbRequests.get();
+	}
+
+	@Override
+	public void close() {
+		server.stop(0);
+	}
+
+	private static String annotate(String document) {
+		return "{\"response\":{\"annotations\":{\":UserID\":" + annotations(USER, 1, document) + ",\":Person\":"
+				+ annotations(PERSON, 0, document) + "}}}";
+	}
+
+	private static String annotations(Pattern pattern, int group, String document) {
+		StringBuilder json = new StringBuilder("[");
+		Matcher matcher = pattern.matcher(document);
+		while (matcher.find()) {
+			if (json.length() > 1)
+				json.append(',');
+			json.append("{\"start\":").append(matcher.start()).append(",\"end\":").append(matcher.end())
+					.append(",\"features\":{\"string\":\"").append(matcher.group(group)).append("\"}}");
+		}
+		return json.append(']').toString();
+	}
+
+	private static String read(InputStream in) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buffer = new byte[8192];
+		int n;
+		while ((n = in.read(buffer)) > 0)
+			out.write(buffer, 0, n);
+		return new String(out.toByteArray(), StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,41 @@
+package com.afp.medialab.weverify.social;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.core.io.ClassPathResource;
+
+import com.afp.medialab.weverify.social.twint.TweetTokenizer;
+import com.afp.medialab.weverify.social.twint.Tweetie;
+
+public class TweetTokenizerTest {
+
+	private TweetTokenizer tokenizer;
+
+	@Before
+	public void init() throws IOException {
+		tokenizer = new TweetTokenizer(new ClassPathResource("regexp.txt"));
+		tokenizer.compile();
+	}
+
+	@Test
+	public void testStripsUrlsAndPunctuation() {
+		assertEquals(Arrays.asList("hello", "world", "see"),
+				tokenizer.tokenize("Hello, World! see https://t.co/abc", Collections.emptyList()));
+	}
+
+	@Test
+	public void testSubstitutesEntitiesByOffset() {
+		String tweet = "Emmanuel Macron meets @jdoe in Paris.";
+		Tweetie person = new Tweetie("Emmanuel Macron", "emmanuel_macron", "Person", 0, 15);
+		Tweetie user = new Tweetie("@jdoe", "@jdoe", "UserID", 23, 27);
+		Tweetie location = new Tweetie("Paris", "paris", "Location", 31, 36);
+		assertEquals(Arrays.asList("emmanuel_macron", "meets", "@jdoe", "in", "paris"),
+				tokenizer.tokenize(tweet, Arrays.asList(location, user, person)));
+	}
+}
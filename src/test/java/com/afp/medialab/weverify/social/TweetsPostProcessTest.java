@@ -0,0 +1,104 @@
+package com.afp.medialab.weverify.social;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.afp.medialab.weverify.social.model.twint.TwintModel;
+import com.afp.medialab.weverify.social.model.twint.WordsInTweet;
+import com.afp.medialab.weverify.social.twint.StopWordsDictionary;
+import com.afp.medialab.weverify.social.twint.TweetTokenizer;
+import com.afp.medialab.weverify.social.twint.Tweetie;
+import com.afp.medialab.weverify.social.twint.TweetsPostProcess;
+import com.afp.medialab.weverify.social.twint.TwittieClient;
+
+public class TweetsPostProcessTest {
+
+	private static final int BATCH_SIZE = 1000;
+
+	private TweetsPostProcess postProcess;
+	private StopWordsDictionary stopWords;
+
+	@Before
+	public void init() throws IOException {
+		stopWords = new StopWordsDictionary(new ClassPathResource("stopwords.json"));
+		stopWords.load();
+		TweetTokenizer tokenizer = new TweetTokenizer(new ClassPathResource("regexp.txt"));
+		tokenizer.compile();
+		TwittieClient twittieClient = mock(TwittieClient.class, withSettings().stubOnly());
+		when(twittieClient.annotate(anyList())).thenAnswer(invocation -> {
+			List<?> tweets = invocation.getArgument(0);
+			List<List<Tweetie>> tweeties = new ArrayList<>();
+			for (int i = 0; i < tweets.size(); i++)
+				tweeties.add(Collections.emptyList());
+			return tweeties;
+		});
+		postProcess = new TweetsPostProcess();
+		ReflectionTestUtils.setField(postProcess, "twittieClient", twittieClient);
+		ReflectionTestUtils.setField(postProcess, "tweetTokenizer", tokenizer);
+		ReflectionTestUtils.setField(postProcess, "stopWords", stopWords);
+	}
+
+	private static List<TwintModel> batch(int first, String search) {
+		List<TwintModel> tms = new ArrayList<>(BATCH_SIZE);
+		for (int i = first; i < first + BATCH_SIZE; i++) {
+			TwintModel tm = new TwintModel();
+			tm.setId(Integer.toString(i));
+			tm.setSearch(search);
+			tm.setTweet("The #Macron visit to Paris is on twitter, see https://t.co/" + i + " word" + (i % 5000));
+			tms.add(tm);
+		}
+		return tms;
+	}
+
+	@Test
+	public void testSearchAndStopWordsExcluded() {
+		List<WordsInTweet> wit = postProcess.buildWit(batch(0, "#Macron Paris")).get(0);
+		List<String> words = wit.stream().map(WordsInTweet::getWord).sorted().collect(Collectors.toList());
+		assertFalse(words.contains("macron"));
+		assertFalse(words.contains("paris"));
+		assertFalse(words.contains("the"));
+		assertFalse(words.contains("twitter"));
+		assertTrue(words.contains("visit"));
+	}
+
+	/**
+	 * Search words are computed once by search in a batch and stop words stay the
+	 * same from one batch to the other
+	 */
+	@Test
+	public void testSearchWordsComputedOncePerBatch() {
+		int nbGlob = stopWords.getStopWords("glob").size();
+		int nbEn = stopWords.getStopWords("en").size();
+		StopWordsDictionary spy = spy(stopWords);
+		ReflectionTestUtils.setField(postProcess, "stopWords", spy);
+
+		List<TwintModel> tms = batch(0, "#Macron Paris");
+		tms.addAll(batch(BATCH_SIZE, "#Macron Lyon"));
+		for (int run = 0; run < 3; run++)
+			assertEquals(tms.size(), postProcess.buildWit(tms).size());
+
+		verify(spy, times(3)).searchWords("#Macron Paris");
+		verify(spy, times(3)).searchWords("#Macron Lyon");
+		assertEquals(nbGlob, spy.getStopWords("glob").size());
+		assertEquals(nbEn, spy.getStopWords("en").size());
+	}
+}
@@ -0,0 +1,94 @@
+package com.afp.medialab.weverify.social;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.afp.medialab.weverify.social.twint.TwittieCircuitBreaker;
+import com.afp.medialab.weverify.social.twint.TwittieCircuitBreaker.State;
+
+public class TwittieCircuitBreakerTest {
+
+	private AtomicLong now = new AtomicLong(0);
+	private TwittieCircuitBreaker breaker;
+
+	@Before
+	public void init() {
+		breaker = new TwittieCircuitBreaker(10, 4, 0.5, 1000, 8000, now::get);
+	}
+
+	private void call(boolean success) {
+		assertTrue(breaker.allowRequest());
+		if (success)
+			breaker.onSuccess();
+		else
+			breaker.onFailure();
+	}
+
+	@Test
+	public void testStaysClosedBelowFailureRate() {
+		for (int i = 0; i < 20; i++) {
+			call(true);
+			call(true);
+			call(false);
+		}
+		assertEquals(State.CLOSED, breaker.getState());
+	}
+
+	@Test
+	public void testOpensOnFailureRate() {
+		call(true);
+		call(false);
+		call(true);
+		assertEquals(State.CLOSED, breaker.getState());
+		call(false);
+		assertEquals(State.OPEN, breaker.getState());
+		assertFalse(breaker.allowRequest());
+		assertFalse(breaker.isAvailable());
+	}
+
+	@Test
+	public void testHalfOpenProbe() {
+		for (int i = 0; i < 4; i++)
+			call(false);
+		now.addAndGet(999);
+		assertFalse(breaker.allowRequest());
+		now.addAndGet(1);
+		assertTrue(breaker.isAvailable());
+		// a single probe at a time
+		assertTrue(breaker.allowRequest());
+		assertEquals(State.HALF_OPEN, breaker.getState());
+		assertFalse(breaker.allowRequest());
+		breaker.onSuccess();
+		assertEquals(State.CLOSED, breaker.getState());
+		assertTrue(breaker.allowRequest());
+	}
+
+	@Test
+	public void testBackoffDoublesUpToMax() {
+		for (int i = 0; i < 4; i++)
+			call(false);
+		long[] delays = { 2000, 4000, 8000, 8000 };
+		now.addAndGet(1000);
+		for (long delay : delays) {
+			assertTrue(breaker.allowRequest());
+			breaker.onFailure();
+			assertEquals(State.OPEN, breaker.getState());
+			now.addAndGet(delay - 1);
+			assertFalse(breaker.allowRequest());
+			now.addAndGet(1);
+		}
+		call(true);
+		assertEquals(State.CLOSED, breaker.getState());
+		// delay is reset once closed
+		for (int i = 0; i < 4; i++)
+			call(false);
+		now.addAndGet(1000);
+		assertTrue(breaker.allowRequest());
+	}
+}
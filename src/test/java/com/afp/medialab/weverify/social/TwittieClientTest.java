@@ -0,0 +1,93 @@
+package com.afp.medialab.weverify.social;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.afp.medialab.weverify.social.twint.Tweetie;
+import com.afp.medialab.weverify.social.twint.TwittieCircuitBreaker;
+import com.afp.medialab.weverify.social.twint.TwittieClient;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class TwittieClientTest {
+
+	private SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+	private TwittieCircuitBreaker breaker() {
+		return new TwittieCircuitBreaker(20, 5, 0.5, 5000, 300000, System::currentTimeMillis);
+	}
+
+	private List<String> tweets(int nb) {
+		List<String> tweets = new ArrayList<>();
+		for (int i = 0; i < nb; i++)
+			tweets.add("tweet " + i + " from @user" + i + " about Jake Tapper and @cnn");
+		return tweets;
+	}
+
+	@Test
+	public void testAnnotationsGivenBackToTheirTweet() throws IOException {
+		try (StubGateServer gate = new StubGateServer(0)) {
+			TwittieClient client = new TwittieClient(gate.getUrl(), 3, 2, 5000, 10000, breaker(), meterRegistry);
+			List<String> tweets = tweets(10);
+			List<List<Tweetie>> tweeties = client.annotate(tweets);
+
+			assertEquals(4, gate.getNbRequests());
+			assertEquals(4, meterRegistry.get("twittie.requests").tag("outcome", "success").timer().count());
+			assertEquals(tweets.size(), tweeties.size());
+			for (int i = 0; i < tweets.size(); i++) {
+				List<Tweetie> entities = tweeties.get(i);
+				assertEquals(3, entities.size());
+				assertTrue(entities.stream().anyMatch(t -> t.getEntity().equals("UserID")));
+				for (Tweetie tweetie : entities)
+					assertTrue(tweets.get(i).contains(tweetie.getFeature()));
+			}
+			assertEquals("@user7", tweeties.get(7).stream().filter(t -> t.getFeature().startsWith("@user"))
+					.findFirst().get().getFeature());
+			client.shutdown();
+		}
+	}
+
+	@Test
+	public void testOneRequestByBatch() throws IOException {
+		int nbTweets = 100;
+		try (StubGateServer gate = new StubGateServer(0)) {
+			annotate(new TwittieClient(gate.getUrl(), 1, 1, 5000, 10000, breaker(), meterRegistry), nbTweets);
+			assertEquals(nbTweets, gate.getNbRequests());
+		}
+		try (StubGateServer gate = new StubGateServer(0)) {
+			annotate(new TwittieClient(gate.getUrl(), 50, 4, 5000, 10000, breaker(), meterRegistry), nbTweets);
+			assertEquals(2, gate.getNbRequests());
+		}
+		try (StubGateServer gate = new StubGateServer(0)) {
+			annotate(new TwittieClient(gate.getUrl(), 30, 4, 5000, 10000, breaker(), meterRegistry), nbTweets);
+			assertEquals(4, gate.getNbRequests());
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void testServiceDown() throws IOException {
+		String url;
+		try (StubGateServer gate = new StubGateServer(0)) {
+			url = gate.getUrl();
+		}
+		TwittieClient client = new TwittieClient(url, 10, 2, 500, 500, breaker(), meterRegistry);
+		try {
+			client.annotate(tweets(30));
+		} finally {
+			assertTrue(meterRegistry.get("twittie.requests").tag("outcome", "error").timer().count() > 0);
+			client.shutdown();
+		}
+	}
+
+	private void annotate(TwittieClient client, int nbTweets) throws IOException {
+		List<List<Tweetie>> tweeties = client.annotate(tweets(nbTweets));
+		assertEquals(nbTweets, tweeties.size());
+		client.shutdown();
+	}
+}